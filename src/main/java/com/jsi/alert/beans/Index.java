@@ -16,7 +16,7 @@ import org.slf4j.LoggerFactory;
 import com.jsi.alert.model.UserPrincipal;
 import com.jsi.alert.model.notification.Notification;
 import com.jsi.alert.service.AuthenticatorService;
-import com.jsi.alert.service.NotificationService;
+import com.jsi.alert.service.NotificationStore;
 import com.jsi.alert.utils.Configuration;
 
 /**
@@ -71,7 +71,7 @@ public class Index {
 		}
 		
 		String uuid = Configuration.NOTIFICATION_DEFAULT_USER == null ? user.getUuid() : Configuration.NOTIFICATION_DEFAULT_USER;
-		List<Notification> newNotifications = NotificationService.fetchNotifications(uuid);
+		List<Notification> newNotifications = NotificationStore.getInstance().getNotifications(uuid);
 		notifications.addAll(newNotifications);
 	}
 	
@@ -84,7 +84,8 @@ public class Index {
 	}
 	
 	public String getLogoutUrl() {
-		return Configuration.LOGOUT_URL;
+		// the LogoutServlet clears the session and redirects to the logout form
+		return "logout";
 	}
 
 	public UserPrincipal getUser() {
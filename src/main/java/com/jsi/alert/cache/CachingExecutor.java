@@ -0,0 +1,60 @@
+package com.jsi.alert.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.mq.MQRequest;
+import com.jsi.alert.mq.MQRequestExecutor;
+import com.jsi.alert.mq.ResultCallback;
+
+/**
+ * Answers the requests from a <code>QueryCache</code> when it has their result,
+ * so a hit skips the MQ round trip and the parsing. The results of the other requests
+ * are cached once they arrive. Requests without a key are passed through.
+ */
+public class CachingExecutor implements MQRequestExecutor {
+
+	private static final Logger log = LoggerFactory.getLogger(CachingExecutor.class);
+
+	private final MQRequestExecutor executor;
+	private final QueryCache cache;
+
+	public CachingExecutor(MQRequestExecutor executor, QueryCache cache) {
+		this.executor = executor;
+		this.cache = cache;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.jsi.alert.mq.MQRequestExecutor#execute(com.jsi.alert.mq.MQRequest, com.jsi.alert.mq.ResultCallback)
+	 */
+	@Override
+	public void execute(MQRequest request, final ResultCallback callback) {
+		final String key = request.getKey();
+		final String queryType = request.getQueryType();
+		if (key == null || !cache.isCached(queryType)) {
+			executor.execute(request, callback);
+			return;
+		}
+
+		String cached = cache.get(key);
+		if (cached != null) {
+			if (log.isDebugEnabled())
+				log.debug("Answering a " + queryType + " request from the cache...");
+			callback.onResult(cached);
+			return;
+		}
+
+		executor.execute(request, new ResultCallback() {
+			@Override
+			public void onResult(String resultJSon) {
+				cache.put(queryType, key, resultJSon);
+				callback.onResult(resultJSon);
+			}
+			@Override
+			public void onFailure(Throwable t) {
+				callback.onFailure(t);
+			}
+		});
+	}
+}
@@ -0,0 +1,105 @@
+package com.jsi.alert.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.mq.PayloadCodec;
+import com.jsi.alert.utils.Configuration;
+
+/**
+ * Caches the details of issues, commits and items, keyed by the type and the ID (or URI)
+ * of the entity. The details rarely or never change, so they are kept for the TTLs in
+ * <code>details.cache.ttl.*</code>. If <code>details.cache.compress</code> is set, the
+ * JSON is stored compressed, so large commit trees take less of the heap.
+ */
+public class DetailsCache implements QueryCache {
+
+	private static final Logger log = LoggerFactory.getLogger(DetailsCache.class);
+
+	// roughly the size of a byte array object without its contents
+	private static final int ARRAY_OVERHEAD = 32;
+
+	private static DetailsCache instance;
+
+	private final TinyLfuCache<String, byte[]> cache;
+	private final String encoding;
+
+	private DetailsCache() {
+		if (log.isDebugEnabled()) log.debug("Creating a details cache of " + Configuration.DETAILS_CACHE_MAX_BYTES + " bytes...");
+		encoding = Configuration.DETAILS_CACHE_COMPRESS ? PayloadCodec.ENCODING_DEFLATE : PayloadCodec.ENCODING_IDENTITY;
+		cache = new TinyLfuCache<>(Configuration.DETAILS_CACHE_MAX_BYTES, new TinyLfuCache.Weigher<byte[]>() {
+			@Override
+			public int weigh(byte[] value) {
+				return ARRAY_OVERHEAD + value.length;
+			}
+		});
+	}
+
+	public static synchronized DetailsCache getInstance() {
+		if (instance == null)
+			instance = new DetailsCache();
+		return instance;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.jsi.alert.cache.QueryCache#isCached(java.lang.String)
+	 */
+	@Override
+	public boolean isCached(String queryType) {
+		return Configuration.DETAILS_CACHE_ENABLED && queryType != null && Configuration.DETAILS_CACHE_TTLS.containsKey(queryType);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.jsi.alert.cache.QueryCache#get(java.lang.String)
+	 */
+	@Override
+	public String get(String key) {
+		byte[] data = cache.get(key);
+		if (data == null) return null;
+
+		try {
+			InputStream in = PayloadCodec.decode(new ByteArrayInputStream(data), encoding);
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+				byte[] buf = new byte[8192];
+				int n;
+				while ((n = in.read(buf)) >= 0)
+					out.write(buf, 0, n);
+				return out.toString(PayloadCodec.CHARSET);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			log.error("Failed to decode cached details, removing them!", e);
+			cache.remove(key);
+			return null;
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.jsi.alert.cache.QueryCache#put(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void put(String queryType, String key, String resultJSon) {
+		Long ttl = Configuration.DETAILS_CACHE_TTLS.get(queryType);
+		if (ttl == null || ttl <= 0) return;
+
+		try {
+			cache.put(key, PayloadCodec.encode(resultJSon, encoding), ttl);
+		} catch (IOException e) {
+			log.error("Failed to encode the details, not caching them!", e);
+		}
+	}
+
+	public TinyLfuCache<String, byte[]> getCache() {
+		return cache;
+	}
+}
@@ -0,0 +1,76 @@
+package com.jsi.alert.cache;
+
+/**
+ * A count-min sketch which estimates how often each key was accessed recently. The
+ * counters saturate at 15 and are all halved once enough accesses were recorded, so
+ * keys which were popular long ago fade out.
+ */
+class FrequencySketch {
+
+	private static final int DEPTH = 4;
+	private static final int MAX_COUNT = 15;
+	private static final int[] SEEDS = {0x97cb3127, 0xcbf29ce4, 0x84222325, 0x9e3779b9};
+
+	private final int[][] table;
+	private final int mask;
+	private final int sampleSize;
+	private int additions = 0;
+
+	/**
+	 * @param expectedKeys the expected number of distinct keys in the cache
+	 */
+	FrequencySketch(int expectedKeys) {
+		int width = Integer.highestOneBit(Math.max(expectedKeys, 16) - 1) << 1;
+		this.table = new int[DEPTH][width];
+		this.mask = width - 1;
+		this.sampleSize = width * 10;
+	}
+
+	/**
+	 * Records an access to the key.
+	 */
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int i = 0; i < DEPTH; i++) {
+			int idx = index(hash, i);
+			if (table[i][idx] < MAX_COUNT) {
+				table[i][idx]++;
+				added = true;
+			}
+		}
+
+		if (added && ++additions >= sampleSize)
+			reset();
+	}
+
+	/**
+	 * Returns the estimated number of recent accesses to the key.
+	 */
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int min = MAX_COUNT;
+		for (int i = 0; i < DEPTH; i++)
+			min = Math.min(min, table[i][index(hash, i)]);
+		return min;
+	}
+
+	private void reset() {
+		for (int[] row : table) {
+			for (int i = 0; i < row.length; i++)
+				row[i] >>>= 1;
+		}
+		additions /= 2;
+	}
+
+	private int index(int hash, int row) {
+		int h = (hash ^ SEEDS[row]) * 0x9e3779b1;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private static int spread(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x45d9f3b;
+		return hash ^ (hash >>> 16);
+	}
+}
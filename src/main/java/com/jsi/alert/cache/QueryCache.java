@@ -0,0 +1,32 @@
+package com.jsi.alert.cache;
+
+/**
+ * A cache of the JSON results of the queries, used by the <code>CachingExecutor</code>.
+ */
+public interface QueryCache {
+
+	/**
+	 * Returns true if the results of the query type are cached.
+	 *
+	 * @param queryType
+	 * @return
+	 */
+	boolean isCached(String queryType);
+
+	/**
+	 * Returns the cached result of the query.
+	 *
+	 * @param key identifies the query
+	 * @return the JSON result or null
+	 */
+	String get(String key);
+
+	/**
+	 * Caches the result of the query.
+	 *
+	 * @param queryType
+	 * @param key identifies the query
+	 * @param resultJSon
+	 */
+	void put(String queryType, String key, String resultJSon);
+}
@@ -0,0 +1,72 @@
+package com.jsi.alert.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.utils.Configuration;
+
+/**
+ * Caches the JSON results of the queries, keyed by the canonical query (the type and the
+ * normalized arguments). Only the query types with a TTL in <code>cache.ttl.*</code> are
+ * cached, the cache is bounded by <code>cache.max.bytes</code>.
+ */
+public class ResponseCache implements QueryCache {
+
+	private static final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+	// roughly the size of a String object without its characters
+	private static final int STRING_OVERHEAD = 64;
+
+	private static ResponseCache instance;
+
+	private final TinyLfuCache<String, String> cache;
+
+	private ResponseCache() {
+		if (log.isDebugEnabled()) log.debug("Creating a response cache of " + Configuration.CACHE_MAX_BYTES + " bytes...");
+		cache = new TinyLfuCache<>(Configuration.CACHE_MAX_BYTES, new TinyLfuCache.Weigher<String>() {
+			@Override
+			public int weigh(String value) {
+				return STRING_OVERHEAD + value.length() * 2;
+			}
+		});
+	}
+
+	public static synchronized ResponseCache getInstance() {
+		if (instance == null)
+			instance = new ResponseCache();
+		return instance;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.jsi.alert.cache.QueryCache#isCached(java.lang.String)
+	 */
+	@Override
+	public boolean isCached(String queryType) {
+		return Configuration.CACHE_ENABLED && queryType != null && Configuration.CACHE_TTLS.containsKey(queryType);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.jsi.alert.cache.QueryCache#get(java.lang.String)
+	 */
+	@Override
+	public String get(String key) {
+		return cache.get(key);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.jsi.alert.cache.QueryCache#put(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void put(String queryType, String key, String resultJSon) {
+		Long ttl = Configuration.CACHE_TTLS.get(queryType);
+		if (ttl == null || ttl <= 0) return;
+		cache.put(key, resultJSon, ttl);
+	}
+
+	public TinyLfuCache<String, String> getCache() {
+		return cache;
+	}
+}
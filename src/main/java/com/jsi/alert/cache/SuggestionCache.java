@@ -0,0 +1,90 @@
+package com.jsi.alert.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.utils.Configuration;
+
+/**
+ * Caches the suggestions for the recently typed prefixes, per suggestion type. Only the
+ * exact prefix is answered from the cache, since a longer prefix can match suggestions
+ * which KEUI didn't return for the shorter one.
+ */
+public class SuggestionCache {
+
+	private static final Logger log = LoggerFactory.getLogger(SuggestionCache.class);
+
+	private static SuggestionCache instance;
+
+	// the cached prefixes in the order they were added, the oldest are evicted first
+	private final LinkedHashMap<String, Suggestions> suggestionsH = new LinkedHashMap<>();
+
+	private SuggestionCache() {}
+
+	public static synchronized SuggestionCache getInstance() {
+		if (instance == null)
+			instance = new SuggestionCache();
+		return instance;
+	}
+
+	/**
+	 * Returns the suggestions cached for the input.
+	 *
+	 * @param suggestionTypes
+	 * @param input
+	 * @return the JSON array of suggestions or null if they have to be fetched from KEUI
+	 */
+	public synchronized String get(String suggestionTypes, String input) {
+		if (!Configuration.SUGGEST_CACHE_ENABLED) return null;
+
+		Suggestions suggestions = suggestionsH.get(key(suggestionTypes, input));
+		if (suggestions == null || suggestions.expiresAt <= System.currentTimeMillis())
+			return null;
+
+		if (log.isDebugEnabled())
+			log.debug("Returning the cached suggestions for '" + input + "'...");
+		return suggestions.json;
+	}
+
+	/**
+	 * Caches the suggestions KEUI returned for the input.
+	 *
+	 * @param suggestionTypes
+	 * @param input
+	 * @param json the JSON array of suggestions
+	 */
+	public synchronized void put(String suggestionTypes, String input, String json) {
+		if (!Configuration.SUGGEST_CACHE_ENABLED) return;
+
+		String key = key(suggestionTypes, input);
+		suggestionsH.remove(key);
+		suggestionsH.put(key, new Suggestions(json, System.currentTimeMillis() + Configuration.SUGGEST_CACHE_TTL));
+		evict();
+	}
+
+	private void evict() {
+		Iterator<Suggestions> iter = suggestionsH.values().iterator();
+		while (suggestionsH.size() > Configuration.SUGGEST_CACHE_MAX_PREFIXES && iter.hasNext()) {
+			iter.next();
+			iter.remove();
+		}
+	}
+
+	private static String key(String suggestionTypes, String input) {
+		String prefix = input == null ? "" : input.trim().toLowerCase();
+		return suggestionTypes + '\u0001' + prefix;
+	}
+
+	private static class Suggestions {
+		final String json;
+		final long expiresAt;
+
+		Suggestions(String json, long expiresAt) {
+			this.json = json;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package com.jsi.alert.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache bounded by the total weight of its values (W-TinyLFU). New entries enter a
+ * small LRU window, entries leaving the window are admitted to the main cache only if
+ * they were accessed more often than the entry they would evict. The main cache is a
+ * segmented LRU: entries hit while on probation move to the protected segment, so one
+ * burst of unique queries can't flush the popular ones.
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class TinyLfuCache<K, V> {
+
+	/**
+	 * Returns the weight of a value, usually its approximate size in bytes.
+	 */
+	public interface Weigher<V> {
+		int weigh(V value);
+	}
+
+	private static final double WINDOW_RATIO = 0.01;
+	private static final double PROTECTED_RATIO = 0.8;
+	// a guess used to size the frequency sketch
+	private static final int AVERAGE_WEIGHT = 4096;
+
+	private final Weigher<V> weigher;
+	private final long windowMax, mainMax, protectedMax;
+	private final FrequencySketch sketch;
+
+	private final LinkedHashMap<K, Node<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<K, Node<V>> probation = new LinkedHashMap<>(16, 0.75f, true);
+	private final LinkedHashMap<K, Node<V>> protectedH = new LinkedHashMap<>(16, 0.75f, true);
+	private long windowWeight = 0, probationWeight = 0, protectedWeight = 0;
+
+	private long hits = 0, misses = 0;
+
+	/**
+	 * @param maxWeight the maximum total weight of the cached values
+	 * @param weigher
+	 */
+	public TinyLfuCache(long maxWeight, Weigher<V> weigher) {
+		this.weigher = weigher;
+		this.windowMax = Math.max((long) (maxWeight * WINDOW_RATIO), 1);
+		this.mainMax = Math.max(maxWeight - windowMax, 1);
+		this.protectedMax = (long) (mainMax * PROTECTED_RATIO);
+		this.sketch = new FrequencySketch((int) Math.min(maxWeight / AVERAGE_WEIGHT, 1 << 20));
+	}
+
+	/**
+	 * Returns the value if it is cached and hasn't expired.
+	 *
+	 * @param key
+	 * @return the value or null
+	 */
+	public synchronized V get(K key) {
+		sketch.increment(key);
+
+		Node<V> entry = window.get(key);
+		if (entry == null) entry = protectedH.get(key);
+		if (entry == null) {
+			entry = probation.remove(key);
+			if (entry != null) {
+				probationWeight -= entry.weight;
+				promote(key, entry);
+			}
+		}
+
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		if (entry.isExpired()) {
+			remove(key);
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value;
+	}
+
+	/**
+	 * Caches the value for the given time. Values heavier than the cache are not cached.
+	 *
+	 * @param key
+	 * @param value
+	 * @param ttl the time to live in milliseconds
+	 */
+	public synchronized void put(K key, V value, long ttl) {
+		remove(key);
+
+		int weight = weigher.weigh(value);
+		if (weight > mainMax) return;
+
+		window.put(key, new Node<>(value, weight, System.currentTimeMillis() + ttl));
+		windowWeight += weight;
+
+		while (windowWeight > windowMax) {
+			Iterator<Map.Entry<K, Node<V>>> iter = window.entrySet().iterator();
+			Map.Entry<K, Node<V>> eldest = iter.next();
+			iter.remove();
+			windowWeight -= eldest.getValue().weight;
+			admit(eldest.getKey(), eldest.getValue());
+		}
+	}
+
+	/**
+	 * Removes the value from the cache.
+	 *
+	 * @param key
+	 */
+	public synchronized void remove(K key) {
+		Node<V> entry;
+		if ((entry = window.remove(key)) != null)
+			windowWeight -= entry.weight;
+		else if ((entry = probation.remove(key)) != null)
+			probationWeight -= entry.weight;
+		else if ((entry = protectedH.remove(key)) != null)
+			protectedWeight -= entry.weight;
+	}
+
+	/**
+	 * Removes all the values.
+	 */
+	public synchronized void clear() {
+		window.clear();
+		probation.clear();
+		protectedH.clear();
+		windowWeight = probationWeight = protectedWeight = 0;
+	}
+
+	public synchronized long getWeight() {
+		return windowWeight + probationWeight + protectedWeight;
+	}
+
+	public synchronized int size() {
+		return window.size() + probation.size() + protectedH.size();
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Moves an entry leaving the window to the main cache if it is accessed more often
+	 * than the entries it has to evict, otherwise drops it.
+	 */
+	private void admit(K key, Node<V> candidate) {
+		int candidateFreq = sketch.frequency(key);
+
+		while (probationWeight + protectedWeight + candidate.weight > mainMax) {
+			LinkedHashMap<K, Node<V>> segment = probation.isEmpty() ? protectedH : probation;
+			Map.Entry<K, Node<V>> victim = segment.entrySet().iterator().next();
+
+			if (!victim.getValue().isExpired() && sketch.frequency(victim.getKey()) >= candidateFreq)
+				return;
+
+			remove(victim.getKey());
+		}
+
+		probation.put(key, candidate);
+		probationWeight += candidate.weight;
+	}
+
+	/**
+	 * Moves a probation entry which was hit to the protected segment, the least recently
+	 * used protected entries go back on probation.
+	 */
+	private void promote(K key, Node<V> entry) {
+		protectedH.put(key, entry);
+		protectedWeight += entry.weight;
+
+		while (protectedWeight > protectedMax && protectedH.size() > 1) {
+			Iterator<Map.Entry<K, Node<V>>> iter = protectedH.entrySet().iterator();
+			Map.Entry<K, Node<V>> eldest = iter.next();
+			iter.remove();
+			protectedWeight -= eldest.getValue().weight;
+			probation.put(eldest.getKey(), eldest.getValue());
+			probationWeight += eldest.getValue().weight;
+		}
+	}
+
+	private static class Node<V> {
+		final V value;
+		final int weight;
+		final long expiresAt;
+
+		Node(V value, int weight, long expiresAt) {
+			this.value = value;
+			this.weight = weight;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() >= expiresAt;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.jsi.alert.mq;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.mq.MQSessionProvider.ComponentKey;
+import com.jsi.alert.utils.Configuration;
+
+/**
+ * Tracks the outcomes of the requests sent to a component and stops sending them when
+ * too many fail. The breaker is:
+ * <ul>
+ * <li>closed - requests pass, the outcomes of the last few requests are recorded</li>
+ * <li>open - requests are rejected until the open time expires</li>
+ * <li>half-open - a few probe requests pass, if they succeed the breaker closes, otherwise it opens again</li>
+ * </ul>
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED,
+		OPEN,
+		HALF_OPEN
+	}
+
+	private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	private final ComponentKey componentKey;
+
+	// the outcomes of the last requests, true means failure
+	private final boolean[] window;
+	private int windowPos = 0;
+	private int windowCount = 0;
+	private int failureCount = 0;
+
+	private State state = State.CLOSED;
+	private long openedAt;
+	private int probesInFlight = 0;
+	private int probesSucceeded = 0;
+
+	public CircuitBreaker(ComponentKey componentKey) {
+		this.componentKey = componentKey;
+		this.window = new boolean[Math.max(Configuration.CIRCUIT_WINDOW, 1)];
+	}
+
+	/**
+	 * Checks whether a request may be sent. Every permitted request must be followed
+	 * by a call to either <code>onSuccess</code> or <code>onFailure</code>.
+	 *
+	 * @return true if the request may be sent
+	 */
+	public synchronized boolean tryAcquire() {
+		if (!Configuration.CIRCUIT_ENABLED) return true;
+
+		if (state == State.CLOSED) return true;
+		
+		if (state == State.OPEN) {
+			if (System.currentTimeMillis() - openedAt < Configuration.CIRCUIT_OPEN_TIME)
+				return false;
+			// this request is the first probe
+			transition(State.HALF_OPEN);
+		}
+		
+		if (probesInFlight + probesSucceeded >= Configuration.CIRCUIT_PROBES)
+			return false;
+		probesInFlight++;
+		return true;
+	}
+
+	/**
+	 * Records a successful request.
+	 */
+	public synchronized void onSuccess() {
+		if (!Configuration.CIRCUIT_ENABLED) return;
+
+		switch (state) {
+		case HALF_OPEN:
+			probesInFlight = Math.max(probesInFlight - 1, 0);
+			if (++probesSucceeded >= Configuration.CIRCUIT_PROBES)
+				transition(State.CLOSED);
+			break;
+		case CLOSED:
+			recordOutcome(false);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Records a failed or timed out request.
+	 */
+	public synchronized void onFailure() {
+		if (!Configuration.CIRCUIT_ENABLED) return;
+
+		switch (state) {
+		case HALF_OPEN:
+			transition(State.OPEN);
+			break;
+		case CLOSED:
+			recordOutcome(true);
+			if (windowCount >= Configuration.CIRCUIT_MIN_REQUESTS &&
+					failureCount >= Configuration.CIRCUIT_FAILURE_RATE * windowCount)
+				transition(State.OPEN);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Releases a permitted request which was not sent, so its outcome says nothing
+	 * about the component.
+	 */
+	public synchronized void onIgnored() {
+		if (state == State.HALF_OPEN)
+			probesInFlight = Math.max(probesInFlight - 1, 0);
+	}
+
+	/**
+	 * Returns the number of milliseconds after which the breaker will let a probe request through.
+	 */
+	public synchronized long getRetryAfter() {
+		if (state != State.OPEN) return 0;
+		return Math.max(Configuration.CIRCUIT_OPEN_TIME - (System.currentTimeMillis() - openedAt), 0);
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	private void recordOutcome(boolean failure) {
+		if (windowCount == window.length) {
+			if (window[windowPos]) failureCount--;
+		} else {
+			windowCount++;
+		}
+
+		window[windowPos] = failure;
+		if (failure) failureCount++;
+		windowPos = (windowPos + 1) % window.length;
+	}
+
+	private void transition(State newState) {
+		if (newState == State.OPEN) {
+			log.warn("The " + componentKey + " component is failing, rejecting requests for " + Configuration.CIRCUIT_OPEN_TIME + "ms...");
+			openedAt = System.currentTimeMillis();
+		} else if (newState == State.CLOSED) {
+			log.info("The " + componentKey + " component recovered, accepting requests...");
+			windowPos = 0;
+			windowCount = 0;
+			failureCount = 0;
+		} else if (log.isDebugEnabled()) {
+			log.debug("Probing the " + componentKey + " component...");
+		}
+
+		probesInFlight = 0;
+		probesSucceeded = 0;
+		state = newState;
+	}
+}
@@ -0,0 +1,57 @@
+package com.jsi.alert.mq;
+
+import java.util.concurrent.TimeoutException;
+
+import javax.jms.JMSException;
+
+/**
+ * Rejects requests to components whose <code>CircuitBreaker</code> is open with a
+ * <code>ComponentUnavailableException</code> and reports the outcomes of the other
+ * requests to the breaker. Only timeouts and MQ errors count as failures.
+ */
+public class CircuitBreakerExecutor implements MQRequestExecutor {
+
+	private final MQRequestExecutor executor;
+	private final MQSessionProvider provider;
+
+	/**
+	 * @param executor the executor which sends the permitted requests
+	 * @param provider provides the circuit breakers, so they are shared by all the servlets
+	 */
+	public CircuitBreakerExecutor(MQRequestExecutor executor, MQSessionProvider provider) {
+		this.executor = executor;
+		this.provider = provider;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.jsi.alert.mq.MQRequestExecutor#execute(com.jsi.alert.mq.MQRequest, com.jsi.alert.mq.ResultCallback)
+	 */
+	@Override
+	public void execute(MQRequest request, final ResultCallback callback) {
+		final CircuitBreaker breaker = provider.getCircuitBreaker(request.getComponentKey());
+
+		if (!breaker.tryAcquire()) {
+			callback.onFailure(new ComponentUnavailableException(request.getComponentKey(), breaker.getRetryAfter()));
+			return;
+		}
+
+		executor.execute(request, new ResultCallback() {
+			@Override
+			public void onResult(String resultJSon) {
+				breaker.onSuccess();
+				callback.onResult(resultJSon);
+			}
+			@Override
+			public void onFailure(Throwable t) {
+				// only a component which doesn't answer counts against the breaker, the requests
+				// which were rejected, couldn't be built or whose reply couldn't be parsed don't
+				if (t instanceof TimeoutException || t instanceof JMSException)
+					breaker.onFailure();
+				else
+					breaker.onIgnored();
+				callback.onFailure(t);
+			}
+		});
+	}
+}
@@ -0,0 +1,20 @@
+package com.jsi.alert.mq;
+
+import com.jsi.alert.mq.MQSessionProvider.ComponentKey;
+
+/**
+ * Thrown when a request is rejected without being sent, because too many requests
+ * are already waiting for the component.
+ */
+public class ComponentOverloadedException extends ComponentUnavailableException {
+
+	private static final long serialVersionUID = -2291658016573934519L;
+
+	/**
+	 * @param componentKey
+	 * @param retryAfter the number of milliseconds after which the client may retry
+	 */
+	public ComponentOverloadedException(ComponentKey componentKey, long retryAfter) {
+		super(componentKey, retryAfter, "The " + componentKey + " component is overloaded!");
+	}
+}
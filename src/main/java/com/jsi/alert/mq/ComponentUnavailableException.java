@@ -0,0 +1,37 @@
+package com.jsi.alert.mq;
+
+import com.jsi.alert.mq.MQSessionProvider.ComponentKey;
+
+/**
+ * Thrown when a request is rejected without being sent, because the component is
+ * known to be unavailable.
+ */
+public class ComponentUnavailableException extends Exception {
+
+	private static final long serialVersionUID = 3851320487160318826L;
+
+	private final ComponentKey componentKey;
+	private final long retryAfter;
+
+	/**
+	 * @param componentKey
+	 * @param retryAfter the number of milliseconds after which the client may retry
+	 */
+	public ComponentUnavailableException(ComponentKey componentKey, long retryAfter) {
+		this(componentKey, retryAfter, "The " + componentKey + " component is unavailable!");
+	}
+	
+	protected ComponentUnavailableException(ComponentKey componentKey, long retryAfter, String message) {
+		super(message);
+		this.componentKey = componentKey;
+		this.retryAfter = retryAfter;
+	}
+
+	public ComponentKey getComponentKey() {
+		return componentKey;
+	}
+
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+}
@@ -0,0 +1,288 @@
+package com.jsi.alert.mq;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.mq.MQSessionProvider.ComponentKey;
+import com.jsi.alert.utils.Configuration;
+
+/**
+ * Limits the number of requests in flight to a component. The limit adapts to the
+ * measured round trip times (AIMD): it grows slowly while the replies are as fast as
+ * the fastest ones observed for their query type and shrinks quickly when they slow
+ * down or time out. The query types are compared separately, since a slow query type
+ * says nothing about the load of the component.
+ * Requests over the limit wait in a short queue and are rejected if they can't be
+ * sent soon enough. The queue is ordered by the priority of the requests, so an
+ * interactive request never waits behind bulk requests, and when it is full a waiting
+ * request of a lower priority is rejected to make room.
+ */
+public class ConcurrencyLimiter {
+
+	/** The number of milliseconds after which the client may retry a rejected request. */
+	public static final long RETRY_AFTER = 1000;
+
+	// the minimum RTT slowly follows the current RTT, so it recovers if the component gets slower for good
+	private static final double MIN_RTT_DRIFT = 0.01;
+
+	private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+	/**
+	 * Notified once the request may be sent or once it is rejected.
+	 */
+	public interface PermitCallback {
+		void onPermit();
+		void onRejected();
+	}
+
+	private final ComponentKey componentKey;
+	private final ScheduledExecutorService scheduler;
+	private final Map<RequestPriority, Deque<Waiter>> waitQueues = new EnumMap<>(RequestPriority.class);
+	private int queueSize = 0;
+
+	private double limit;
+	private int inFlight = 0;
+	private final Map<String, Double> minRttH = new HashMap<>();
+	private long lastDecrease = 0;
+
+	ConcurrencyLimiter(ComponentKey componentKey, ScheduledExecutorService scheduler) {
+		this.componentKey = componentKey;
+		this.scheduler = scheduler;
+		this.limit = Configuration.LIMIT_INITIAL;
+		for (RequestPriority priority : RequestPriority.values())
+			waitQueues.put(priority, new ArrayDeque<Waiter>());
+	}
+
+	/**
+	 * Takes a permit if one is available, never waits.
+	 *
+	 * @return true if the request may be sent
+	 */
+	public synchronized boolean tryAcquire() {
+		if (!Configuration.LIMIT_ENABLED) return true;
+
+		if (inFlight >= getLimit() || queueSize > 0)
+			return false;
+		inFlight++;
+		return true;
+	}
+
+	/**
+	 * Takes a permit and notifies the callback. If the limit is reached, the request waits
+	 * in the queue for at most <code>limit.queue.timeout</code> ms behind the requests of
+	 * the same or higher priority. If the queue is full, the youngest waiting request of
+	 * a lower priority is rejected in its place, if there is none the request is rejected
+	 * immediately. A permitted request must be followed by a call to <code>onSuccess</code>,
+	 * <code>onDropped</code> or <code>onIgnored</code>.
+	 *
+	 * @param priority
+	 * @param callback
+	 */
+	public void acquire(final RequestPriority priority, PermitCallback callback) {
+		final Waiter waiter;
+		Waiter evicted = null;
+		boolean rejected = false;
+		synchronized (this) {
+			if (tryAcquire()) {
+				waiter = null;
+			} else if (queueSize < Configuration.LIMIT_QUEUE_SIZE || (evicted = evict(priority)) != null) {
+				waiter = new Waiter(callback);
+				waitQueues.get(priority).add(waiter);
+				queueSize++;
+			} else {
+				waiter = null;
+				rejected = true;
+			}
+		}
+
+		if (evicted != null) {
+			Future<?> timeout = evicted.timeoutFuture;
+			if (timeout != null)
+				timeout.cancel(false);
+			if (log.isDebugEnabled())
+				log.debug("Too many requests waiting for the " + componentKey + " component, rejecting a request of a lower priority...");
+			evicted.callback.onRejected();
+		}
+		if (rejected) {
+			if (log.isDebugEnabled())
+				log.debug("Too many requests waiting for the " + componentKey + " component, rejecting...");
+			callback.onRejected();
+			return;
+		}
+		if (waiter == null) {
+			callback.onPermit();
+			return;
+		}
+
+		waiter.timeoutFuture = scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				boolean expired;
+				synchronized (ConcurrencyLimiter.this) {
+					expired = waitQueues.get(priority).remove(waiter);
+					if (expired) queueSize--;
+				}
+				if (expired) {
+					if (log.isDebugEnabled())
+						log.debug("Request waited too long for the " + componentKey + " component, rejecting...");
+					waiter.callback.onRejected();
+				}
+			}
+		}, Configuration.LIMIT_QUEUE_TIMEOUT, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Releases the permit of a request which received its reply.
+	 *
+	 * @param queryType the RTT is compared to the fastest RTT of the same query type
+	 * @param rtt the round trip time in milliseconds, without parsing the reply
+	 */
+	public void onSuccess(String queryType, long rtt) {
+		List<Waiter> admitted;
+		synchronized (this) {
+			Double minRtt = minRttH.get(queryType);
+			if (minRtt == null || rtt < minRtt)
+				minRtt = (double) rtt;
+			else
+				minRtt += (rtt - minRtt) * MIN_RTT_DRIFT;
+			minRttH.put(queryType, minRtt);
+
+			if (rtt > minRtt * Configuration.LIMIT_RTT_TOLERANCE)
+				decrease(minRtt);
+			else if (inFlight * 2 >= limit)
+				limit = Math.min(limit + 1 / limit, Configuration.LIMIT_MAX);
+
+			admitted = release();
+		}
+		notifyAdmitted(admitted);
+	}
+
+	/**
+	 * Releases the permit of a request which timed out.
+	 *
+	 * @param queryType
+	 */
+	public void onDropped(String queryType) {
+		List<Waiter> admitted;
+		synchronized (this) {
+			Double minRtt = minRttH.get(queryType);
+			decrease(minRtt != null ? minRtt : 0);
+			admitted = release();
+		}
+		notifyAdmitted(admitted);
+	}
+
+	/**
+	 * Releases the permit of a request which says nothing about the load of the component.
+	 */
+	public void onIgnored() {
+		List<Waiter> admitted;
+		synchronized (this) {
+			admitted = release();
+		}
+		notifyAdmitted(admitted);
+	}
+
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public synchronized int getQueueSize() {
+		return queueSize;
+	}
+
+	/**
+	 * Removes the youngest waiting request of the lowest priority which is lower than
+	 * the given one.
+	 *
+	 * @return the removed request or null if there is none
+	 */
+	private Waiter evict(RequestPriority priority) {
+		RequestPriority[] priorities = RequestPriority.values();
+		// the priorities are declared from the highest to the lowest
+		for (int i = priorities.length - 1; i > priority.ordinal(); i--) {
+			Waiter waiter = waitQueues.get(priorities[i]).pollLast();
+			if (waiter != null) {
+				queueSize--;
+				return waiter;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes the oldest waiting request of the highest priority.
+	 */
+	private Waiter poll() {
+		for (Deque<Waiter> queue : waitQueues.values()) {
+			Waiter waiter = queue.poll();
+			if (waiter != null) {
+				queueSize--;
+				return waiter;
+			}
+		}
+		return null;
+	}
+
+	private void decrease(double minRtt) {
+		// decrease at most once per round trip of the query type, the replies to the
+		// requests sent before the previous decrease are already late
+		long now = System.currentTimeMillis();
+		if (now - lastDecrease < Math.max(minRtt, 1)) return;
+
+		lastDecrease = now;
+		limit = Math.max(limit * Configuration.LIMIT_BACKOFF, Configuration.LIMIT_MIN);
+
+		if (log.isDebugEnabled())
+			log.debug("The " + componentKey + " component is slowing down, concurrency limit: " + getLimit());
+	}
+
+	private List<Waiter> release() {
+		if (!Configuration.LIMIT_ENABLED) return null;
+
+		inFlight = Math.max(inFlight - 1, 0);
+
+		List<Waiter> admitted = null;
+		while (inFlight < getLimit() && queueSize > 0) {
+			if (admitted == null) admitted = new ArrayList<>();
+			admitted.add(poll());
+			inFlight++;
+		}
+		return admitted;
+	}
+
+	private void notifyAdmitted(List<Waiter> admitted) {
+		if (admitted == null) return;
+
+		for (Waiter waiter : admitted) {
+			Future<?> timeout = waiter.timeoutFuture;
+			if (timeout != null)
+				timeout.cancel(false);
+			waiter.callback.onPermit();
+		}
+	}
+
+	private static class Waiter {
+		final PermitCallback callback;
+		volatile Future<?> timeoutFuture;
+
+		Waiter(PermitCallback callback) {
+			this.callback = callback;
+		}
+	}
+}
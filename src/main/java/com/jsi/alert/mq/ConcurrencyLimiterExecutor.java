@@ -0,0 +1,94 @@
+package com.jsi.alert.mq;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends requests only when the components <code>ConcurrencyLimiter</code> permits it,
+ * the requests which can't be sent in time are rejected with a
+ * <code>ComponentOverloadedException</code>. Each request holds its permit until its
+ * result arrives or it is abandoned, so every hedge of a request takes a permit of its own.
+ */
+public class ConcurrencyLimiterExecutor implements MQRequestExecutor {
+
+	private final MQRequestExecutor executor;
+	private final MQSessionProvider provider;
+
+	/**
+	 * @param executor the executor which sends the permitted requests
+	 * @param provider provides the limiters, so they are shared by all the servlets
+	 */
+	public ConcurrencyLimiterExecutor(MQRequestExecutor executor, MQSessionProvider provider) {
+		this.executor = executor;
+		this.provider = provider;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.jsi.alert.mq.MQRequestExecutor#execute(com.jsi.alert.mq.MQRequest, com.jsi.alert.mq.ResultCallback)
+	 */
+	@Override
+	public void execute(final MQRequest request, final ResultCallback callback) {
+		final ConcurrencyLimiter limiter = provider.getConcurrencyLimiter(request.getComponentKey());
+
+		limiter.acquire(request.getPriority(), new ConcurrencyLimiter.PermitCallback() {
+			@Override
+			public void onPermit() {
+				final long startTime = System.currentTimeMillis();
+
+				executor.execute(request, new ProgressCallback() {
+					private volatile long rtt = -1;
+					// the permit is released once, by the result or by abandoning the request
+					private final AtomicBoolean released = new AtomicBoolean();
+					
+					@Override
+					public void onSent(final Runnable cancel) {
+						if (!(callback instanceof ProgressCallback)) return;
+
+						// an abandoned request gets no result, its permit is released here
+						((ProgressCallback) callback).onSent(new Runnable() {
+							@Override
+							public void run() {
+								cancel.run();
+								if (released.compareAndSet(false, true))
+									limiter.onIgnored();
+							}
+						});
+					}
+					@Override
+					public void onReplyReceived() {
+						rtt = System.currentTimeMillis() - startTime;
+						if (callback instanceof ProgressCallback)
+							((ProgressCallback) callback).onReplyReceived();
+					}
+					@Override
+					public void onResult(String resultJSon) {
+						if (released.compareAndSet(false, true)) {
+							// a cached or coalesced result has no reply of its own
+							if (rtt >= 0)
+								limiter.onSuccess(request.getQueryType(), rtt);
+							else
+								limiter.onIgnored();
+						}
+						callback.onResult(resultJSon);
+					}
+					@Override
+					public void onFailure(Throwable t) {
+						if (released.compareAndSet(false, true)) {
+							// only timeouts tell that the component can't keep up
+							if (t instanceof TimeoutException)
+								limiter.onDropped(request.getQueryType());
+							else
+								limiter.onIgnored();
+						}
+						callback.onFailure(t);
+					}
+				});
+			}
+			@Override
+			public void onRejected() {
+				callback.onFailure(new ComponentOverloadedException(request.getComponentKey(), ConcurrencyLimiter.RETRY_AFTER));
+			}
+		});
+	}
+}
@@ -0,0 +1,54 @@
+package com.jsi.alert.mq;
+
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+
+/**
+ * Decides how the requests to a component are delivered: whether the broker stores them
+ * and whether they expire once nobody waits for the reply anymore.
+ */
+public class DeliveryProfile {
+
+	private final boolean persistent;
+	private final boolean expire;
+
+	/**
+	 * @param persistent if true, the broker stores the requests until they are delivered
+	 * @param expire if true, the requests expire at their deadline
+	 */
+	public DeliveryProfile(boolean persistent, boolean expire) {
+		this.persistent = persistent;
+		this.expire = expire;
+	}
+
+	public int getDeliveryMode() {
+		return persistent ? DeliveryMode.PERSISTENT : DeliveryMode.NON_PERSISTENT;
+	}
+
+	/**
+	 * Returns the time to live of a request with the given timeout.
+	 *
+	 * @param timeout the timeout of the request in milliseconds
+	 * @return
+	 */
+	public long getTimeToLive(long timeout) {
+		return expire ? timeout : Message.DEFAULT_TIME_TO_LIVE;
+	}
+
+	public boolean isPersistent() {
+		return persistent;
+	}
+
+	public boolean isExpire() {
+		return expire;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "persistent: " + persistent + ", expire: " + expire;
+	}
+}
@@ -0,0 +1,91 @@
+package com.jsi.alert.mq;
+
+import javax.jms.JMSException;
+
+import org.apache.activemq.broker.BrokerRegistry;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.network.NetworkConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.utils.Configuration;
+
+/**
+ * A broker running inside this JVM, reached through the <code>vm://</code> transport, so
+ * the messages to components in the same JVM are passed in memory. The broker is bridged
+ * to the network broker for the remote components.
+ */
+final class EmbeddedBroker {
+
+	private static final Logger log = LoggerFactory.getLogger(EmbeddedBroker.class);
+
+	// the broker started by this class, null if it attached to a broker started by someone else
+	private static BrokerService ownBroker;
+
+	private EmbeddedBroker() {}
+
+	/**
+	 * Starts the embedded broker or attaches to it if it is already running in this JVM.
+	 *
+	 * @return the URL the connections should use
+	 * @throws JMSException
+	 */
+	static synchronized String start() throws JMSException {
+		String name = Configuration.MQ_EMBEDDED_NAME;
+
+		if (BrokerRegistry.getInstance().lookup(name) != null) {
+			if (log.isDebugEnabled()) log.debug("Attaching to the embedded broker " + name + "...");
+		} else {
+			log.info("Starting the embedded broker " + name + "...");
+			try {
+				BrokerService broker = new BrokerService();
+				broker.setBrokerName(name);
+				// the requests are short lived, nothing to keep over a restart
+				broker.setPersistent(false);
+				broker.setUseJmx(false);
+
+				if (!Configuration.MQ_EMBEDDED_CONNECTOR.isEmpty())
+					broker.addConnector(Configuration.MQ_EMBEDDED_CONNECTOR);
+
+				// duplex, so the replies of the remote components come back over the same bridge
+				if (!Configuration.MQ_EMBEDDED_NETWORK.isEmpty()) {
+					NetworkConnector bridge = broker.addNetworkConnector(Configuration.MQ_EMBEDDED_NETWORK);
+					bridge.setName(name + "-bridge");
+					bridge.setDuplex(true);
+				}
+
+				broker.start();
+				broker.waitUntilStarted();
+				ownBroker = broker;
+			} catch (Exception e) {
+				JMSException jmsException = new JMSException("Failed to start the embedded broker: " + e.getMessage());
+				jmsException.setLinkedException(e);
+				throw jmsException;
+			}
+			log.info("Embedded broker started!");
+		}
+
+		return "vm://" + name + "?create=false";
+	}
+
+	/**
+	 * Stops the embedded broker if it was started by <code>start</code>, a broker it only
+	 * attached to is left running for its owner.
+	 */
+	static synchronized void stop() {
+		BrokerService broker = ownBroker;
+		if (broker == null) {
+			if (log.isDebugEnabled()) log.debug("The embedded broker wasn't started here, leaving it running...");
+			return;
+		}
+		ownBroker = null;
+
+		log.info("Stopping the embedded broker " + broker.getBrokerName() + "...");
+		try {
+			broker.stop();
+			broker.waitUntilStopped();
+		} catch (Exception e) {
+			log.error("Failed to stop the embedded broker!", e);
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.jsi.alert.mq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.utils.Configuration;
+
+/**
+ * Hedges idempotent requests: if the reply doesn't arrive within the usual latency of the
+ * query type (<code>hedge.percentile</code>), the request is sent again with a new request ID
+ * and the first reply wins, the other attempt is abandoned. The hedges are limited to
+ * <code>hedge.max.rate</code> of the requests, so a slow component doesn't get twice the load.
+ * The executor sits outside the <code>ConcurrencyLimiterExecutor</code>, so each attempt takes
+ * a permit of its own, and a hedge is only sent while the component's limiter has a free permit.
+ */
+public class HedgingExecutor implements MQRequestExecutor {
+
+	// the number of hedges which may be sent in a burst
+	private static final double MAX_BUDGET = 10;
+
+	private static final Logger log = LoggerFactory.getLogger(HedgingExecutor.class);
+
+	private final MQRequestExecutor executor;
+	private final MQSessionProvider provider;
+	private final ScheduledExecutorService scheduler;
+
+	private double budget = 0;
+
+	/**
+	 * @param executor the executor which limits and sends the requests and the hedges
+	 * @param provider provides the latencies of the query types and the concurrency limiters
+	 */
+	public HedgingExecutor(MQRequestExecutor executor, MQSessionProvider provider) {
+		this.executor = executor;
+		this.provider = provider;
+		this.scheduler = provider.getTimeoutScheduler();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.jsi.alert.mq.MQRequestExecutor#execute(com.jsi.alert.mq.MQRequest, com.jsi.alert.mq.ResultCallback)
+	 */
+	@Override
+	public void execute(final MQRequest request, ResultCallback callback) {
+		if (!Configuration.HEDGE_ENABLED || request.getQueryType() == null ||
+				!Configuration.HEDGE_TYPES.contains(request.getQueryType().toLowerCase())) {
+			executor.execute(request, callback);
+			return;
+		}
+
+		addBudget();
+
+		long delay = provider.getTimeoutPolicy().getTracker(request.getComponentKey(), request.getQueryType()).getPercentile(Configuration.HEDGE_PERCENTILE);
+		if (delay < 0) {
+			// no latencies measured yet
+			executor.execute(request, callback);
+			return;
+		}
+
+		final HedgedResult result = new HedgedResult(callback);
+		executor.execute(request, result);
+
+		result.setHedgeFuture(scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				// a hedge must not wait for a permit or take one from a waiting request
+				ConcurrencyLimiter limiter = provider.getConcurrencyLimiter(request.getComponentKey());
+				if (limiter.getInFlight() >= limiter.getLimit() || limiter.getQueueSize() > 0) {
+					if (log.isDebugEnabled())
+						log.debug("The " + request.getComponentKey() + " component is at its concurrency limit, not hedging the " + request.getQueryType() + " request...");
+					return;
+				}
+				if (!takeBudget()) return;
+
+				if (result.startHedge()) {
+					if (log.isDebugEnabled())
+						log.debug("No reply from the " + request.getComponentKey() + " component yet, hedging the " + request.getQueryType() + " request...");
+					executor.execute(request, result);
+				} else {
+					returnBudget();
+				}
+			}
+		}, Math.max(delay, Configuration.HEDGE_MIN_DELAY), TimeUnit.MILLISECONDS));
+	}
+
+	private synchronized void addBudget() {
+		budget = Math.min(budget + Configuration.HEDGE_MAX_RATE, MAX_BUDGET);
+	}
+
+	private synchronized boolean takeBudget() {
+		if (budget < 1) return false;
+		budget--;
+		return true;
+	}
+
+	private synchronized void returnBudget() {
+		budget++;
+	}
+
+	/**
+	 * Passes the first result of the request or its hedge to the callback, the request
+	 * fails only once all the attempts failed. Once the result is passed on, the attempts
+	 * still waiting are abandoned, so their replies aren't parsed.
+	 */
+	private static class HedgedResult implements ProgressCallback {
+
+		private final ResultCallback callback;
+
+		private int attempts = 1;
+		private int failures = 0;
+		private boolean done = false;
+		private boolean replied = false;
+		private Future<?> hedgeFuture;
+		private final List<Runnable> cancelHandles = new ArrayList<>();
+
+		HedgedResult(ResultCallback callback) {
+			this.callback = callback;
+		}
+
+		synchronized void setHedgeFuture(Future<?> hedgeFuture) {
+			if (done)
+				hedgeFuture.cancel(false);
+			else
+				this.hedgeFuture = hedgeFuture;
+		}
+
+		/**
+		 * @return true if the request is still waiting and a hedge should be sent
+		 */
+		synchronized boolean startHedge() {
+			if (done) return false;
+			attempts++;
+			return true;
+		}
+
+		@Override
+		public void onSent(Runnable cancel) {
+			synchronized (this) {
+				if (!done) {
+					cancelHandles.add(cancel);
+					return;
+				}
+			}
+			cancel.run();
+		}
+
+		@Override
+		public void onReplyReceived() {
+			synchronized (this) {
+				// only the first reply is timed
+				if (done || replied) return;
+				replied = true;
+			}
+			if (callback instanceof ProgressCallback)
+				((ProgressCallback) callback).onReplyReceived();
+		}
+
+		@Override
+		public void onResult(String resultJSon) {
+			if (!finish()) return;
+			cancelAttempts();
+			callback.onResult(resultJSon);
+		}
+
+		@Override
+		public void onFailure(Throwable t) {
+			synchronized (this) {
+				// the other attempt might still succeed
+				if (++failures < attempts || !finish()) return;
+			}
+			callback.onFailure(t);
+		}
+
+		private synchronized boolean finish() {
+			if (done) return false;
+			done = true;
+			if (hedgeFuture != null)
+				hedgeFuture.cancel(false);
+			return true;
+		}
+
+		/**
+		 * Abandons the attempts which are still waiting, the completed ones are no longer registered.
+		 */
+		private void cancelAttempts() {
+			List<Runnable> toCancel;
+			synchronized (this) {
+				toCancel = new ArrayList<>(cancelHandles);
+				cancelHandles.clear();
+			}
+			for (Runnable cancel : toCancel)
+				cancel.run();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.jsi.alert.mq;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.mq.MQSessionProvider.ComponentKey;
+import com.jsi.alert.utils.Configuration;
+
+/**
+ * Picks one of the instances of a replicated component for each request. The instances
+ * are placed on a consistent hash ring, so the same query always goes to the same
+ * instance and its caches stay warm. An instance which stops answering is skipped for
+ * a while, its queries go to the next instance on the ring.
+ */
+public class InstanceRouter {
+
+	private static final Logger log = LoggerFactory.getLogger(InstanceRouter.class);
+
+	private final ComponentKey componentKey;
+	private final List<String> instances;
+	private final TreeMap<Integer, Integer> ring = new TreeMap<>();
+
+	private final int[] consecutiveFailures;
+	private final long[] downUntil;
+
+	/**
+	 * @param componentKey
+	 * @param instances the names of the instances, the ring only depends on the names
+	 */
+	InstanceRouter(ComponentKey componentKey, List<String> instances) {
+		this.componentKey = componentKey;
+		this.instances = instances;
+		this.consecutiveFailures = new int[instances.size()];
+		this.downUntil = new long[instances.size()];
+
+		for (int i = 0; i < instances.size(); i++) {
+			for (int node = 0; node < Configuration.ROUTING_VIRTUAL_NODES; node++)
+				ring.put(hash(instances.get(i) + "#" + node), i);
+		}
+	}
+
+	/**
+	 * Returns the index of the instance which should handle the request. If all the
+	 * instances are down, the one which owns the key is returned anyway.
+	 *
+	 * @param routingKey identifies the query, requests with the same key go to the same instance
+	 * @return
+	 */
+	public synchronized int route(String routingKey) {
+		int hash = hash(routingKey);
+		long now = System.currentTimeMillis();
+
+		Map.Entry<Integer, Integer> entry = ring.ceilingEntry(hash);
+		if (entry == null) entry = ring.firstEntry();
+		int owner = entry.getValue();
+
+		// walk the ring clockwise until a healthy instance is found
+		for (int i = 0; i < ring.size(); i++) {
+			if (downUntil[entry.getValue()] <= now)
+				return entry.getValue();
+			entry = ring.higherEntry(entry.getKey());
+			if (entry == null) entry = ring.firstEntry();
+		}
+		return owner;
+	}
+
+	/**
+	 * Records a reply from the instance.
+	 *
+	 * @param instance
+	 */
+	public synchronized void onSuccess(int instance) {
+		consecutiveFailures[instance] = 0;
+		if (downUntil[instance] != 0) {
+			log.info("The " + componentKey + " instance " + getName(instance) + " is answering again!");
+			downUntil[instance] = 0;
+		}
+	}
+
+	/**
+	 * Records a request to the instance which timed out, after <code>routing.failure.threshold</code>
+	 * consecutive failures the instance is skipped for <code>routing.down.time</code> ms.
+	 *
+	 * @param instance
+	 */
+	public synchronized void onFailure(int instance) {
+		if (++consecutiveFailures[instance] < Configuration.ROUTING_FAILURE_THRESHOLD) return;
+
+		log.warn("The " + componentKey + " instance " + getName(instance) + " is not answering, skipping it for " + Configuration.ROUTING_DOWN_TIME + "ms...");
+		consecutiveFailures[instance] = 0;
+		downUntil[instance] = System.currentTimeMillis() + Configuration.ROUTING_DOWN_TIME;
+	}
+
+	public synchronized boolean isHealthy(int instance) {
+		return downUntil[instance] <= System.currentTimeMillis();
+	}
+
+	public String getName(int instance) {
+		return instances.get(instance);
+	}
+
+	public int getInstanceCount() {
+		return instances.size();
+	}
+
+	/**
+	 * FNV-1a, spreads similar keys over the ring better than <code>String.hashCode</code>.
+	 */
+	private static int hash(String key) {
+		int hash = 0x811c9dc5;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x01000193;
+		}
+		// final avalanche, FNV alone leaves the high bits of short keys poorly mixed
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		return hash;
+	}
+}
@@ -0,0 +1,14 @@
+package com.jsi.alert.mq;
+
+/**
+ * Thrown when the request message can't be built from the parameters of the client's
+ * request, so the request is never sent.
+ */
+public class InvalidRequestException extends Exception {
+
+	private static final long serialVersionUID = -2715306084310659127L;
+
+	public InvalidRequestException(Throwable cause) {
+		super("Failed to create the request message: " + cause.getMessage(), cause);
+	}
+}
@@ -0,0 +1,58 @@
+package com.jsi.alert.mq;
+
+import java.util.Arrays;
+
+/**
+ * Keeps a sliding window of the most recent round trip times of one type of request and
+ * computes percentiles over it.
+ */
+public class LatencyTracker {
+	
+	private static final int WINDOW_SIZE = 256;
+	private static final int MIN_SAMPLES = 20;
+	// the sorted window is only rebuilt after this many new samples
+	private static final int RESORT_INTERVAL = 16;
+	
+	private final long[] samples = new long[WINDOW_SIZE];
+	private int count = 0;
+	private int next = 0;
+	
+	private long[] sorted;
+	private int unsortedCount = 0;
+	
+	/**
+	 * Records the round trip time of a request.
+	 * 
+	 * @param latency in milliseconds
+	 */
+	public synchronized void record(long latency) {
+		samples[next] = latency;
+		next = (next + 1) % WINDOW_SIZE;
+		if (count < WINDOW_SIZE) count++;
+		unsortedCount++;
+	}
+	
+	/**
+	 * Returns the percentile of the recorded round trip times or -1 if there aren't enough
+	 * samples yet.
+	 * 
+	 * @param percentile between 0 and 1
+	 * @return
+	 */
+	public synchronized long getPercentile(double percentile) {
+		if (count < MIN_SAMPLES) return -1;
+		
+		if (sorted == null || unsortedCount >= RESORT_INTERVAL) {
+			sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			unsortedCount = 0;
+		}
+		
+		int idx = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+	}
+	
+	public synchronized int getSampleCount() {
+		return count;
+	}
+}
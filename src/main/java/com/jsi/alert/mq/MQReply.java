@@ -0,0 +1,113 @@
+package com.jsi.alert.mq;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.TextMessage;
+
+/**
+ * The payload of a reply received from one of the components, either the text of a
+ * <code>TextMessage</code> or the (possibly compressed) payload of a <code>BytesMessage</code>.
+ * The parsers should read the payload through <code>getInputStream</code>, so it is only
+ * decoded once, while it is being parsed.
+ */
+public class MQReply {
+
+	private final String text;
+	private final byte[] data;
+	private final String encoding;
+
+	public MQReply(String text) {
+		this.text = text;
+		this.data = null;
+		this.encoding = null;
+	}
+
+	public MQReply(byte[] data, String encoding) {
+		this.text = null;
+		this.data = data;
+		this.encoding = encoding;
+	}
+
+	/**
+	 * Reads the payload of the message.
+	 *
+	 * @param message
+	 * @return the reply or null if the message is neither a text nor a bytes message
+	 * @throws JMSException
+	 */
+	static MQReply fromMessage(Message message) throws JMSException {
+		if (message instanceof TextMessage)
+			return new MQReply(((TextMessage) message).getText());
+
+		if (message instanceof BytesMessage) {
+			BytesMessage bytesMessage = (BytesMessage) message;
+			byte[] data = new byte[(int) bytesMessage.getBodyLength()];
+			bytesMessage.readBytes(data);
+			return new MQReply(data, message.getStringProperty(PayloadCodec.CONTENT_ENCODING_PROPERTY));
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns a stream of the decoded payload.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public InputStream getInputStream() throws IOException {
+		if (text != null)
+			return new ByteArrayInputStream(text.getBytes(PayloadCodec.CHARSET));
+		return PayloadCodec.decode(new ByteArrayInputStream(data), encoding);
+	}
+
+	/**
+	 * Returns the decoded payload as a <code>String</code>.
+	 *
+	 * @return
+	 * @throws IOException
+	 */
+	public String getText() throws IOException {
+		if (text != null)
+			return text;
+
+		InputStream in = getInputStream();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(data.length, 32) * 4);
+			byte[] buf = new byte[8192];
+			int n;
+			while ((n = in.read(buf)) >= 0)
+				out.write(buf, 0, n);
+			return out.toString(PayloadCodec.CHARSET);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns the size of the payload as received, in bytes for binary payloads and
+	 * characters for text.
+	 */
+	public int getSize() {
+		return text != null ? text.length() : data.length;
+	}
+
+	public boolean isText() {
+		return text != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return text != null ? text : "<" + data.length + " bytes, encoding: " + encoding + ">";
+	}
+}
@@ -0,0 +1,171 @@
+package com.jsi.alert.mq;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.mq.MQSessionProvider.ComponentKey;
+import com.jsi.alert.utils.Configuration;
+
+/**
+ * Listens on a response topic and hands each reply to the request which is waiting for it.
+ * The requests are matched by their ID, so a reply is never consumed by the wrong thread.
+ */
+public class MQReplyDispatcher implements MessageListener {
+
+	private static final Logger log = LoggerFactory.getLogger(MQReplyDispatcher.class);
+
+	/** The JMS property which carries the ID of the UI node which sent the request. */
+	public static final String NODE_ID_PROPERTY = "alertNodeId";
+	/** The JMS property which carries the time (in ms since epoch) after which nobody waits for the reply. */
+	public static final String DEADLINE_PROPERTY = "alertDeadline";
+	/** The JMS property which carries the ID of the request, the components should copy it to the reply. */
+	public static final String REQUEST_ID_PROPERTY = ReplyHeaderReader.REQUEST_ID_PROPERTY;
+	
+	private static final String CORRELATION_PREFIX = Configuration.NODE_ID + ":";
+
+	private final ComponentKey componentKey;
+	private final ScheduledExecutorService timeoutScheduler;
+	private final Executor callbackExecutor;
+	private final ConcurrentMap<String, PendingReply> pendingH = new ConcurrentHashMap<>();
+
+	MQReplyDispatcher(ComponentKey componentKey, ScheduledExecutorService timeoutScheduler, Executor callbackExecutor) {
+		this.componentKey = componentKey;
+		this.timeoutScheduler = timeoutScheduler;
+		this.callbackExecutor = callbackExecutor;
+	}
+
+	/**
+	 * Registers a request which is about to be sent. Has to be called before the request
+	 * is sent, otherwise the reply might arrive before anyone is waiting for it. If the reply
+	 * doesn't arrive in time, the request is failed with a <code>TimeoutException</code>.
+	 *
+	 * @param requestId
+	 * @param timeout the timeout in milliseconds
+	 * @return
+	 */
+	public PendingReply register(final String requestId, long timeout) {
+		final PendingReply pending = new PendingReply(requestId, callbackExecutor);
+		if (pendingH.putIfAbsent(requestId, pending) != null)
+			throw new IllegalStateException("Request " + requestId + " is already waiting for a reply!");
+
+		pending.setTimeoutFuture(timeoutScheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (pendingH.remove(requestId, pending))
+					pending.fail(new TimeoutException(componentKey + " timed out!"));
+			}
+		}, timeout, TimeUnit.MILLISECONDS));
+
+		return pending;
+	}
+
+	/**
+	 * Fails the request and removes it from the registry.
+	 *
+	 * @param requestId
+	 * @param failure
+	 * @return true if the request was waiting for a reply
+	 */
+	public boolean fail(String requestId, Throwable failure) {
+		PendingReply pending = pendingH.remove(requestId);
+		return pending != null && pending.fail(failure);
+	}
+
+	/**
+	 * Fails all the pending requests, used when their replies can't arrive anymore.
+	 * 
+	 * @param failure
+	 */
+	public void failAll(Throwable failure) {
+		for (String requestId : pendingH.keySet())
+			fail(requestId, failure);
+	}
+	
+	/**
+	 * Abandons the request: removes it from the registry and cancels its timeout without
+	 * notifying the callbacks. Any reply received after this call is discarded.
+	 *
+	 * @param requestId
+	 */
+	public void unregister(String requestId) {
+		PendingReply pending = pendingH.remove(requestId);
+		if (pending != null)
+			pending.cancelTimeout();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.jms.MessageListener#onMessage(javax.jms.Message)
+	 */
+	@Override
+	public void onMessage(Message message) {
+		try {
+			MQReply reply = MQReply.fromMessage(message);
+			if (reply == null) {
+				log.warn("Received a message which is neither text nor bytes from the " + componentKey + " component, ignoring...");
+				return;
+			}
+
+			String requestId = ReplyHeaderReader.readRequestId(message, reply, CORRELATION_PREFIX);
+			if (requestId == null) {
+				log.warn("Received a message without a request ID from the " + componentKey + " component, ignoring...");
+				return;
+			}
+
+			PendingReply pending = pendingH.remove(requestId);
+
+			if (pending == null) {
+				if (log.isDebugEnabled())
+					log.debug("Nobody is waiting for the reply to request " + requestId + ", ignoring...");
+				return;
+			}
+
+			if (log.isDebugEnabled()) {
+				log.debug("Received response from the " + componentKey + " component!");
+				if (Configuration.LOG_EVENTS)
+					log.debug(reply.toString());
+			}
+
+			pending.complete(reply);
+		} catch (JMSException | IOException e) {
+			log.error("Failed to read a reply from the " + componentKey + " component!", e);
+		}
+	}
+
+	/**
+	 * Returns the correlation ID of the request, which identifies both this node and the request.
+	 * 
+	 * @param requestId
+	 * @return
+	 */
+	public static String getCorrelationId(String requestId) {
+		return CORRELATION_PREFIX + requestId;
+	}
+	
+	/**
+	 * Returns the message selector which only accepts replies to requests sent by this node.
+	 * The broker then drops replies to other nodes before they reach this JVM.
+	 */
+	public static String getReplySelector() {
+		return "JMSCorrelationID LIKE '" + CORRELATION_PREFIX + "%'";
+	}
+	
+	/**
+	 * Returns the number of requests currently waiting for a reply.
+	 */
+	public int getPendingCount() {
+		return pendingH.size();
+	}
+}
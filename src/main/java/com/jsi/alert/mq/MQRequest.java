@@ -0,0 +1,111 @@
+package com.jsi.alert.mq;
+
+import java.util.Properties;
+import java.util.TreeSet;
+
+import com.jsi.alert.mq.MQSessionProvider.ComponentKey;
+
+/**
+ * A request which is sent to one of the components over the MQ. Knows how to build the
+ * request message and how to turn the reply into the JSON which is sent to the client.
+ */
+public abstract class MQRequest {
+	
+	private static final char KEY_SEPARATOR = '\u0001';
+	
+	private final ComponentKey componentKey;
+	private final String queryType;
+	private final String key;
+	private final RequestPriority priority;
+	private volatile long deadline = 0;
+	
+	protected MQRequest(ComponentKey componentKey, String queryType) {
+		this(componentKey, queryType, null);
+	}
+	
+	/**
+	 * @param componentKey
+	 * @param queryType the type of the query, requests of the same type share timeouts
+	 * @param key identifies the request regardless of its request ID, requests with the same
+	 * key are expected to return the same result. Can be null.
+	 */
+	protected MQRequest(ComponentKey componentKey, String queryType, String key) {
+		this.componentKey = componentKey;
+		this.queryType = queryType;
+		this.key = key;
+		this.priority = RequestPriority.forQueryType(queryType);
+	}
+	
+	/**
+	 * Generates the request message.
+	 * 
+	 * @param requestId
+	 * @return
+	 * @throws Exception
+	 */
+	public abstract String createMessage(String requestId) throws Exception;
+	
+	/**
+	 * Parses the reply and returns a JSON <code>String</code>. Large replies should be
+	 * parsed from <code>reply.getInputStream()</code>, so they are not copied into a <code>String</code>.
+	 * 
+	 * @param reply
+	 * @return
+	 * @throws Exception
+	 */
+	public abstract String parseResponse(MQReply reply) throws Exception;
+	
+	public ComponentKey getComponentKey() {
+		return componentKey;
+	}
+	
+	public String getQueryType() {
+		return queryType;
+	}
+	
+	public String getKey() {
+		return key;
+	}
+	
+	public RequestPriority getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * Returns the time (in ms since epoch) after which the client no longer waits for the
+	 * result, or 0 if it wasn't set. The time spent in the queues counts against it.
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+	
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+	
+	/**
+	 * Creates a key from the query type and the properties, which doesn't depend on the order
+	 * in which the properties were added.
+	 * 
+	 * @param queryType
+	 * @param props
+	 * @return
+	 */
+	public static String createKey(String queryType, Properties props) {
+		StringBuilder builder = new StringBuilder(queryType);
+		for (String name : new TreeSet<>(props.stringPropertyNames()))
+			builder.append(KEY_SEPARATOR).append(name).append('=').append(props.getProperty(name));
+		return builder.toString();
+	}
+	
+	/**
+	 * Creates a key from the query type and the query argument.
+	 * 
+	 * @param queryType
+	 * @param query
+	 * @return
+	 */
+	public static String createKey(String queryType, String query) {
+		return queryType + KEY_SEPARATOR + query;
+	}
+}
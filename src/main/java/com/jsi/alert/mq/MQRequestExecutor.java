@@ -0,0 +1,16 @@
+package com.jsi.alert.mq;
+
+/**
+ * Executes <code>MQRequest</code>s asynchronously. Implementations usually wrap another
+ * executor and add a single concern, like coalescing identical requests.
+ */
+public interface MQRequestExecutor {
+	
+	/**
+	 * Executes the request, the callback is notified with the parsed result.
+	 * 
+	 * @param request
+	 * @param callback
+	 */
+	void execute(MQRequest request, ResultCallback callback);
+}
@@ -1,24 +1,41 @@
 package com.jsi.alert.mq;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-import javax.jms.ConnectionFactory;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.ExceptionListener;
 import javax.jms.JMSException;
 import javax.jms.MessageConsumer;
-import javax.jms.MessageProducer;
 import javax.jms.Session;
+import javax.jms.TemporaryQueue;
 import javax.jms.Topic;
 
+import org.apache.activemq.ActiveMQConnection;
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.transport.TransportListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jsi.alert.utils.Configuration;
+import com.jsi.alert.utils.ThreadPools;
 
 /**
- * A singleton class which has a reference to the ActiveMQ session.
+ * A singleton class which holds the ActiveMQ connections and a pool of sessions. Since
+ * JMS sessions are single threaded, each sending thread checks out its own session.
+ * When the connection is lost, the connections, sessions and consumers are re-created
+ * in the background.
  * 
  * @author Luka Stopar
  *
@@ -32,10 +49,34 @@ public class MQSessionProvider {
 	
 	private static final Logger log = LoggerFactory.getLogger(MQSessionProvider.class);
 	
+	private static final String REPLY_TRANSPORT_QUEUE = "queue";
+	
 	private static MQSessionProvider instance;
 	
-	private Session mqSession;
+	// the connection state is replaced as a whole when reconnecting
+	private volatile List<Connection> connections;
+	private volatile BlockingQueue<PooledSession> sessionPool;
+	private volatile Map<ComponentKey, TemporaryQueue> replyQueues = new EnumMap<>(ComponentKey.class);
+	private volatile boolean connected = false;
+	private Session listenerSession;
 	private Map<ComponentKey, Topic> requestTopics, responseTopics;
+	private volatile Map<ComponentKey, List<Topic>> instanceTopics;
+	private volatile int generation = 0;
+	private long reconnectDelay;
+	
+	// the dispatchers survive reconnects, so the servlets can keep their references
+	private Map<ComponentKey, MQReplyDispatcher> dispatcherH;
+	
+	private ScheduledThreadPoolExecutor timeoutScheduler;
+	private ScheduledExecutorService reconnectScheduler;
+	private ExecutorService callbackExecutor;
+	
+	private final TimeoutPolicy timeoutPolicy = new TimeoutPolicy();
+	private final Map<ComponentKey, CircuitBreaker> circuitBreakerH = new EnumMap<>(ComponentKey.class);
+	private final Map<ComponentKey, ConcurrencyLimiter> limiterH = new EnumMap<>(ComponentKey.class);
+	private final Map<ComponentKey, DeliveryProfile> deliveryH = new EnumMap<>(ComponentKey.class);
+	private final Map<RequestPriority, PriorityLane> laneH = new EnumMap<>(RequestPriority.class);
+	private final Map<ComponentKey, InstanceRouter> routerH = new EnumMap<>(ComponentKey.class);
 	
 	public static synchronized MQSessionProvider getInstance() throws JMSException, IOException {
 		if (instance == null)
@@ -43,90 +84,413 @@ public class MQSessionProvider {
 		return instance;
 	}
 	
+	/**
+	 * Closes the connections and stops the threads of the provider, called when the
+	 * application is undeployed. The pending requests fail.
+	 */
+	public static synchronized void shutdown() {
+		if (instance == null) return;
+		
+		instance.close();
+		instance = null;
+	}
+	
 	private MQSessionProvider() throws JMSException, IOException {
+		for (ComponentKey key : ComponentKey.values()) {
+			circuitBreakerH.put(key, new CircuitBreaker(key));
+			
+			String componentName = key.name().toLowerCase();
+			deliveryH.put(key, new DeliveryProfile(Configuration.MQ_PERSISTENT_COMPONENTS.contains(componentName),
+					Configuration.MQ_EXPIRING_COMPONENTS.contains(componentName)));
+		}
+		
 		initMQ();
 	}
 	
 	/**
-	 * Initializes the connection to ActiveMQ.
+	 * Creates the reply dispatchers and connects to ActiveMQ. If the broker is not
+	 * available, the connection is retried in the background.
 	 * 
 	 * @throws JMSException
 	 * @throws IOException 
 	 */
 	private void initMQ() throws JMSException, IOException {
 		log.info("Initializing ActiveMQ...");
-
-		// init MQ
-		if (log.isDebugEnabled()) log.debug("Creating connections...");
-		ConnectionFactory factory = new ActiveMQConnectionFactory(Configuration.ACTIVEMQ_URL);
-		javax.jms.Connection mqConnection = factory.createConnection();
-		mqConnection.start();
-
-		mqSession = mqConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
 		
-		if (log.isDebugEnabled()) log.debug("Creating consumers and producers...");
-		requestTopics = new HashMap<>();
-		responseTopics = new HashMap<>();
+		// replies are handled on the callback threads, so the listener thread is free for the next reply
+		if (log.isDebugEnabled()) log.debug("Creating reply dispatchers...");
+		timeoutScheduler = new ScheduledThreadPoolExecutor(1);
+		timeoutScheduler.setRemoveOnCancelPolicy(true);
+		reconnectScheduler = Executors.newSingleThreadScheduledExecutor();
+		callbackExecutor = ThreadPools.newBlockingExecutor("mq-callback", Configuration.CALLBACK_THREADS);
+		
+		dispatcherH = new EnumMap<>(ComponentKey.class);
+		for (ComponentKey key : ComponentKey.values()) {
+			dispatcherH.put(key, new MQReplyDispatcher(key, timeoutScheduler, callbackExecutor));
+			limiterH.put(key, new ConcurrencyLimiter(key, timeoutScheduler));
+		}
+		
+		if (!Configuration.KEUI_REQUEST_INSTANCES.isEmpty()) {
+			log.info("Routing the KEUI requests over " + Configuration.KEUI_REQUEST_INSTANCES.size() + " instances...");
+			routerH.put(ComponentKey.KEUI, new InstanceRouter(ComponentKey.KEUI, Configuration.KEUI_REQUEST_INSTANCES));
+		}
 		
-		// initiate consumers/producers
-		requestTopics.put(ComponentKey.KEUI, mqSession.createTopic(Configuration.KEUI_REQUEST_TOPIC));
-		requestTopics.put(ComponentKey.API, mqSession.createTopic(Configuration.API_REQUEST_TOPIC));
+		laneH.put(RequestPriority.INTERACTIVE, new PriorityLane(RequestPriority.INTERACTIVE, Configuration.LANE_INTERACTIVE_MAX, Configuration.LANE_QUEUE_SIZE, Configuration.LANE_QUEUE_TIMEOUT, timeoutScheduler));
+		laneH.put(RequestPriority.NORMAL, new PriorityLane(RequestPriority.NORMAL, Configuration.LANE_NORMAL_MAX, Configuration.LANE_QUEUE_SIZE, Configuration.LANE_QUEUE_TIMEOUT, timeoutScheduler));
+		laneH.put(RequestPriority.BULK, new PriorityLane(RequestPriority.BULK, Configuration.LANE_BULK_MAX, Configuration.LANE_QUEUE_SIZE, Configuration.LANE_QUEUE_TIMEOUT, timeoutScheduler));
 		
-		responseTopics.put(ComponentKey.KEUI, mqSession.createTopic(Configuration.KEUI_RESPONSE_TOPIC));
-		responseTopics.put(ComponentKey.API, mqSession.createTopic(Configuration.API_RESPONSE_TOPIC));
+		reconnectDelay = Configuration.MQ_RECONNECT_DELAY;
+		try {
+			connect();
+		} catch (JMSException e) {
+			log.error("Failed to connect to ActiveMQ, will retry in the background!", e);
+			scheduleReconnect();
+		}
 		
 		log.info("Initialization finished!");
 	}
 	
 	/**
-	 * Creates and returns a <code>MessageProducer</code> posting on the KEUI request topic.
+	 * Creates the connections, fills the session pool and attaches the reply dispatchers
+	 * to the reply destinations.
+	 * 
+	 * @throws JMSException
+	 */
+	private synchronized void connect() throws JMSException {
+		final int connGeneration = ++generation;
+		
+		if (log.isDebugEnabled()) log.debug("Creating " + Configuration.MQ_POOL_CONNECTIONS + " connections...");
+		String brokerUrl = Configuration.MQ_EMBEDDED ? EmbeddedBroker.start() : Configuration.ACTIVEMQ_URL;
+		ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(brokerUrl);
+		// with async sends the send errors are reported to the ExceptionListener instead of the sender
+		factory.setUseAsyncSend(Configuration.MQ_ASYNC_SEND);
+		List<Connection> newConnections = new ArrayList<>(Configuration.MQ_POOL_CONNECTIONS);
+		try {
+			for (int i = 0; i < Configuration.MQ_POOL_CONNECTIONS; i++) {
+				final Connection mqConnection = factory.createConnection();
+				newConnections.add(mqConnection);
+				
+				mqConnection.setExceptionListener(new ExceptionListener() {
+					@Override
+					public void onException(JMSException e) {
+						// with async sends a rejected request is reported here as well, the
+						// connection is only re-created if it is actually gone
+						if (mqConnection instanceof ActiveMQConnection) {
+							ActiveMQConnection amqConnection = (ActiveMQConnection) mqConnection;
+							if (!amqConnection.isTransportFailed() && !amqConnection.isClosed()) {
+								log.warn("ActiveMQ failed to process a request: " + e.getMessage());
+								return;
+							}
+						}
+						connectionLost(connGeneration, e);
+					}
+				});
+				// with a failover: URL the transport reconnects by itself, but the replies
+				// to the requests sent before the interruption may be lost
+				if (mqConnection instanceof ActiveMQConnection)
+					((ActiveMQConnection) mqConnection).addTransportListener(new TransportListener() {
+						@Override
+						public void transportInterupted() {
+							log.warn("ActiveMQ transport interrupted, failing pending requests...");
+							failPending(new JMSException("The connection to ActiveMQ was interrupted!"));
+						}
+						@Override
+						public void transportResumed() {
+							log.info("ActiveMQ transport resumed!");
+						}
+						@Override
+						public void onException(IOException e) {}
+						@Override
+						public void onCommand(Object command) {}
+					});
+				
+				mqConnection.start();
+			}
+			
+			// the listeners get their own session, since JMS sessions are single threaded
+			listenerSession = newConnections.get(0).createSession(false, Session.AUTO_ACKNOWLEDGE);
+			
+			requestTopics = new EnumMap<>(ComponentKey.class);
+			responseTopics = new EnumMap<>(ComponentKey.class);
+			
+			requestTopics.put(ComponentKey.KEUI, listenerSession.createTopic(Configuration.KEUI_REQUEST_TOPIC));
+			requestTopics.put(ComponentKey.API, listenerSession.createTopic(Configuration.API_REQUEST_TOPIC));
+			
+			Map<ComponentKey, List<Topic>> newInstanceTopics = new EnumMap<>(ComponentKey.class);
+			if (!Configuration.KEUI_REQUEST_INSTANCES.isEmpty()) {
+				List<Topic> topics = new ArrayList<>();
+				for (String topicName : Configuration.KEUI_REQUEST_INSTANCES)
+					topics.add(listenerSession.createTopic(topicName));
+				newInstanceTopics.put(ComponentKey.KEUI, topics);
+			}
+			
+			responseTopics.put(ComponentKey.KEUI, listenerSession.createTopic(Configuration.KEUI_RESPONSE_TOPIC));
+			responseTopics.put(ComponentKey.API, listenerSession.createTopic(Configuration.API_RESPONSE_TOPIC));
+			
+			// the sessions are spread evenly over the connections
+			int nSessions = Configuration.MQ_POOL_CONNECTIONS * Configuration.MQ_POOL_SESSIONS;
+			if (log.isDebugEnabled()) log.debug("Creating " + nSessions + " pooled sessions...");
+			BlockingQueue<PooledSession> newPool = new ArrayBlockingQueue<>(nSessions);
+			for (int i = 0; i < nSessions; i++) {
+				Connection mqConnection = newConnections.get(i % newConnections.size());
+				newPool.add(new PooledSession(mqConnection.createSession(false, Session.AUTO_ACKNOWLEDGE), requestTopics, connGeneration));
+			}
+			
+			Map<ComponentKey, TemporaryQueue> newReplyQueues = new EnumMap<>(ComponentKey.class);
+			for (ComponentKey key : ComponentKey.values()) {
+				MQReplyDispatcher dispatcher = dispatcherH.get(key);
+				
+				// with reply queues each node only receives its own replies, the topic is
+				// kept as a fallback for components which ignore JMSReplyTo
+				boolean useQueue = REPLY_TRANSPORT_QUEUE.equals(Configuration.MQ_REPLY_TRANSPORT);
+				if (useQueue) {
+					TemporaryQueue replyQueue = listenerSession.createTemporaryQueue();
+					listenerSession.createConsumer(replyQueue).setMessageListener(dispatcher);
+					newReplyQueues.put(key, replyQueue);
+				}
+				if (!useQueue || Configuration.MQ_REPLY_TOPIC_FALLBACK) {
+					MessageConsumer consumer = Configuration.MQ_REPLY_SELECTOR ?
+							listenerSession.createConsumer(responseTopics.get(key), MQReplyDispatcher.getReplySelector()) :
+							listenerSession.createConsumer(responseTopics.get(key));
+					consumer.setMessageListener(dispatcher);
+				}
+			}
+			
+			connections = newConnections;
+			sessionPool = newPool;
+			replyQueues = newReplyQueues;
+			instanceTopics = newInstanceTopics;
+			connected = true;
+			reconnectDelay = Configuration.MQ_RECONNECT_DELAY;
+			
+			log.info("Connected to ActiveMQ!");
+		} catch (JMSException e) {
+			closeQuietly(newConnections);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Called when a connection fails. Fails the pending requests, since their replies
+	 * will never arrive, and starts reconnecting.
+	 * 
+	 * @param connGeneration the generation of the failed connection
+	 * @param e
+	 */
+	private void connectionLost(int connGeneration, JMSException e) {
+		synchronized (this) {
+			// the other connections of the same generation report the failure as well
+			if (connGeneration != generation || !connected) return;
+			
+			log.error("Lost the connection to ActiveMQ, reconnecting...", e);
+			connected = false;
+			
+			// not closed on the notifying thread, it belongs to the failed connection
+			final List<Connection> lostConnections = connections;
+			reconnectScheduler.execute(new Runnable() {
+				@Override
+				public void run() {
+					closeQuietly(lostConnections);
+				}
+			});
+			scheduleReconnect();
+		}
+		
+		failPending(new JMSException("Lost the connection to ActiveMQ!"));
+	}
+	
+	private void close() {
+		log.info("Closing the ActiveMQ connections...");
+		
+		synchronized (this) {
+			// the listeners of the closed connections must not start reconnecting
+			generation++;
+			connected = false;
+			reconnectScheduler.shutdownNow();
+		}
+		closeQuietly(connections);
+		failPending(new JMSException("The ActiveMQ connections were closed!"));
+		
+		timeoutScheduler.shutdownNow();
+		// the failed requests are still being completed
+		callbackExecutor.shutdown();
+		
+		if (Configuration.MQ_EMBEDDED)
+			EmbeddedBroker.stop();
+	}
+	
+	private synchronized void scheduleReconnect() {
+		if (reconnectScheduler.isShutdown()) return;
+		
+		if (log.isDebugEnabled()) log.debug("Reconnecting to ActiveMQ in " + reconnectDelay + "ms...");
+		
+		reconnectScheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					connect();
+				} catch (Throwable t) {
+					log.warn("Failed to reconnect to ActiveMQ: " + t.getMessage());
+					synchronized (MQSessionProvider.this) {
+						reconnectDelay = Math.min(reconnectDelay * 2, Configuration.MQ_RECONNECT_MAX_DELAY);
+						scheduleReconnect();
+					}
+				}
+			}
+		}, reconnectDelay, TimeUnit.MILLISECONDS);
+	}
+	
+	private void failPending(Throwable failure) {
+		for (MQReplyDispatcher dispatcher : dispatcherH.values())
+			dispatcher.failAll(failure);
+	}
+	
+	private void closeQuietly(List<Connection> toClose) {
+		if (toClose == null) return;
+		
+		for (Connection connection : toClose) {
+			try {
+				connection.close();
+			} catch (Throwable t) {
+				if (log.isDebugEnabled())
+					log.debug("Failed to close a connection: " + t.getMessage());
+			}
+		}
+	}
+	
+	/**
+	 * Checks a session out of the pool, waiting if all the sessions are in use. The session
+	 * must be returned with <code>releaseSession</code> once the caller is done with it.
 	 * 
 	 * @return
-	 * @throws JMSException 
+	 * @throws JMSException if not connected or no session becomes available before the request timeout
 	 */
-	public MessageProducer getKEUIProducer() throws JMSException {
-		return getProducer(ComponentKey.KEUI);
+	public PooledSession borrowSession() throws JMSException {
+		if (!connected)
+			throw new JMSException("Not connected to ActiveMQ!");
+		
+		try {
+			PooledSession session = sessionPool.poll(Configuration.REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+			if (session == null)
+				throw new JMSException("No JMS session available, the pool of " + Configuration.MQ_POOL_SESSIONS + " sessions per connection is exhausted!");
+			return session;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JMSException("Interrupted while waiting for a JMS session!");
+		}
+	}
+	
+	/**
+	 * Returns whether the connections to ActiveMQ are up.
+	 */
+	public boolean isConnected() {
+		return connected;
 	}
 	
 	/**
-	 * Creates and returns a <code>MessageConsumer</code> listening on the KEUI response topic.
+	 * Returns the session to the pool.
 	 * 
+	 * @param session
+	 */
+	public void releaseSession(PooledSession session) {
+		// sessions of closed connections are not returned to the new pool
+		if (session.getGeneration() == generation)
+			sessionPool.offer(session);
+	}
+	
+	/**
+	 * Returns the temporary queue on which this node receives the components replies, or
+	 * null if the replies are received on the response topic.
+	 * 
+	 * @param componentKey
 	 * @return
-	 * @throws JMSException 
 	 */
-	public MessageConsumer getKEUIConsumer() throws JMSException {
-		return getConsumer(ComponentKey.KEUI);
+	public Destination getReplyDestination(ComponentKey componentKey) {
+		return replyQueues.get(componentKey);
 	}
 	
 	/**
-	 * Creates and returns a <code>MessageProducer</code> posting on the API request topic.
+	 * Returns the router which picks the instance of a replicated component.
 	 * 
+	 * @param componentKey
+	 * @return the router or null if the component has a single request topic
+	 */
+	public InstanceRouter getInstanceRouter(ComponentKey componentKey) {
+		return routerH.get(componentKey);
+	}
+	
+	/**
+	 * Returns the request topic of an instance of a replicated component.
+	 * 
+	 * @param componentKey
+	 * @param instance the index returned by the components <code>InstanceRouter</code>
 	 * @return
-	 * @throws JMSException 
 	 */
-	public MessageProducer getAPIProducer() throws JMSException {
-		return getProducer(ComponentKey.API);
+	public Destination getInstanceDestination(ComponentKey componentKey, int instance) {
+		return instanceTopics.get(componentKey).get(instance);
+	}
+	
+	/**
+	 * Returns the scheduler which runs the short timers of the requests.
+	 */
+	ScheduledExecutorService getTimeoutScheduler() {
+		return timeoutScheduler;
 	}
 	
 	/**
-	 * Creates and returns a <code>MessageConsumer</code> listening on the API response topic.
+	 * Returns the policy which decides the timeouts of the requests.
+	 */
+	public TimeoutPolicy getTimeoutPolicy() {
+		return timeoutPolicy;
+	}
+	
+	/**
+	 * Returns the circuit breaker which guards the requests to the component.
+	 * 
+	 * @param componentKey
+	 * @return
+	 */
+	public CircuitBreaker getCircuitBreaker(ComponentKey componentKey) {
+		return circuitBreakerH.get(componentKey);
+	}
+	
+	/**
+	 * Returns the limiter of the requests in flight to the component.
 	 * 
+	 * @param componentKey
 	 * @return
-	 * @throws JMSException 
 	 */
-	public MessageConsumer getAPIConsumer() throws JMSException {
-		return getConsumer(ComponentKey.API);
+	public ConcurrencyLimiter getConcurrencyLimiter(ComponentKey componentKey) {
+		return limiterH.get(componentKey);
 	}
 	
-	private MessageProducer getProducer(ComponentKey componentKey) throws JMSException {
-		return mqSession.createProducer(requestTopics.get(componentKey));
+	/**
+	 * Returns the lane through which the requests of the priority class are sent.
+	 * 
+	 * @param priority
+	 * @return
+	 */
+	public PriorityLane getPriorityLane(RequestPriority priority) {
+		return laneH.get(priority);
 	}
 	
-	private MessageConsumer getConsumer(ComponentKey componentKey) throws JMSException {
-		return mqSession.createConsumer(responseTopics.get(componentKey));
+	/**
+	 * Returns the profile which decides how the requests to the component are delivered.
+	 * 
+	 * @param componentKey
+	 * @return
+	 */
+	public DeliveryProfile getDeliveryProfile(ComponentKey componentKey) {
+		return deliveryH.get(componentKey);
 	}
 	
-	public Session getSession() {
-		return mqSession;
+	/**
+	 * Returns the dispatcher which delivers replies from the components response topic.
+	 * 
+	 * @param componentKey
+	 * @return
+	 */
+	public MQReplyDispatcher getDispatcher(ComponentKey componentKey) {
+		return dispatcherH.get(componentKey);
 	}
 }
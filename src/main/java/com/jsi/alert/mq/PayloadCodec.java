@@ -0,0 +1,76 @@
+package com.jsi.alert.mq;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes and decodes the payloads of binary messages. The encoding of a payload is sent
+ * in the <code>CONTENT_ENCODING_PROPERTY</code>, the encodings the sender can read in the
+ * <code>ACCEPT_ENCODING_PROPERTY</code>.
+ */
+public class PayloadCodec {
+
+	/** The JMS property which carries the encoding of a <code>BytesMessage</code> payload. */
+	public static final String CONTENT_ENCODING_PROPERTY = "alertContentEncoding";
+	/** The JMS property which carries the encodings in which the reply may be sent, comma separated. */
+	public static final String ACCEPT_ENCODING_PROPERTY = "alertAcceptEncoding";
+
+	public static final String ENCODING_IDENTITY = "identity";
+	public static final String ENCODING_GZIP = "gzip";
+	public static final String ENCODING_DEFLATE = "deflate";
+
+	public static final String CHARSET = "UTF-8";
+
+	private PayloadCodec() {}
+
+	/**
+	 * Encodes the text with the given encoding.
+	 *
+	 * @param text
+	 * @param encoding identity, gzip or deflate
+	 * @return
+	 * @throws IOException
+	 */
+	public static byte[] encode(String text, String encoding) throws IOException {
+		byte[] data = text.getBytes(CHARSET);
+		if (encoding == null || ENCODING_IDENTITY.equals(encoding))
+			return data;
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+		OutputStream encoder;
+		if (ENCODING_GZIP.equals(encoding))
+			encoder = new GZIPOutputStream(out);
+		else if (ENCODING_DEFLATE.equals(encoding))
+			encoder = new DeflaterOutputStream(out);
+		else
+			throw new IOException("Unsupported encoding: " + encoding + "!");
+
+		encoder.write(data);
+		encoder.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Wraps the stream so it returns the decoded payload.
+	 *
+	 * @param in
+	 * @param encoding identity, gzip, deflate or null if the payload is not encoded
+	 * @return
+	 * @throws IOException
+	 */
+	public static InputStream decode(InputStream in, String encoding) throws IOException {
+		if (encoding == null || ENCODING_IDENTITY.equals(encoding))
+			return in;
+		if (ENCODING_GZIP.equals(encoding))
+			return new GZIPInputStream(in);
+		if (ENCODING_DEFLATE.equals(encoding))
+			return new InflaterInputStream(in);
+		throw new IOException("Unsupported encoding: " + encoding + "!");
+	}
+}
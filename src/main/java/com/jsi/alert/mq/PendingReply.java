@@ -0,0 +1,142 @@
+package com.jsi.alert.mq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A handle to a request which was sent over the MQ and is waiting for its reply.
+ * The reply is delivered by the <code>MQReplyDispatcher</code>, the caller can either
+ * block on <code>get</code> or register a <code>ReplyCallback</code>.
+ */
+public class PendingReply {
+
+	private final String requestId;
+	private final Executor callbackExecutor;
+	private final CountDownLatch latch = new CountDownLatch(1);
+	private final List<ReplyCallback> callbacks = new ArrayList<>();
+
+	private volatile MQReply reply;
+	private volatile Throwable failure;
+	private volatile Future<?> timeoutFuture;
+
+	PendingReply(String requestId, Executor callbackExecutor) {
+		this.requestId = requestId;
+		this.callbackExecutor = callbackExecutor;
+	}
+
+	/**
+	 * Sets the reply and notifies the waiting threads and callbacks. Only the first
+	 * outcome is accepted.
+	 *
+	 * @param reply
+	 * @return true if this was the first outcome
+	 */
+	boolean complete(MQReply reply) {
+		return finish(reply, null);
+	}
+
+	/**
+	 * Fails the request and notifies the waiting threads and callbacks.
+	 *
+	 * @param failure
+	 * @return true if this was the first outcome
+	 */
+	boolean fail(Throwable failure) {
+		return finish(null, failure);
+	}
+
+	private boolean finish(MQReply reply, Throwable failure) {
+		List<ReplyCallback> toNotify;
+		synchronized (callbacks) {
+			if (isDone()) return false;
+			this.reply = reply;
+			this.failure = failure;
+			latch.countDown();
+
+			toNotify = new ArrayList<>(callbacks);
+			callbacks.clear();
+		}
+
+		Future<?> timeout = timeoutFuture;
+		if (timeout != null)
+			timeout.cancel(false);
+
+		for (ReplyCallback callback : toNotify)
+			notifyCallback(callback);
+		return true;
+	}
+
+	/**
+	 * Registers a callback which is notified once the reply arrives or the request fails.
+	 * If that already happened, the callback is notified immediately.
+	 *
+	 * @param callback
+	 */
+	public void addCallback(ReplyCallback callback) {
+		synchronized (callbacks) {
+			if (!isDone()) {
+				callbacks.add(callback);
+				return;
+			}
+		}
+		notifyCallback(callback);
+	}
+
+	private void notifyCallback(final ReplyCallback callback) {
+		callbackExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (failure != null)
+					callback.onFailure(failure);
+				else
+					callback.onReply(reply);
+			}
+		});
+	}
+
+	/**
+	 * Waits for the reply.
+	 *
+	 * @param timeout the maximum time to wait in milliseconds
+	 * @return the received reply
+	 * @throws InterruptedException
+	 * @throws TimeoutException if the reply didn't arrive in time
+	 * @throws ExecutionException if the request failed
+	 */
+	public MQReply get(long timeout) throws InterruptedException, TimeoutException, ExecutionException {
+		if (!latch.await(Math.max(timeout, 0), TimeUnit.MILLISECONDS))
+			throw new TimeoutException("Reply to request " + requestId + " did not arrive in " + timeout + "ms!");
+		if (failure != null)
+			throw new ExecutionException(failure);
+		return reply;
+	}
+
+	public boolean isDone() {
+		return latch.getCount() == 0;
+	}
+
+	public String getRequestId() {
+		return requestId;
+	}
+
+	void setTimeoutFuture(Future<?> timeoutFuture) {
+		this.timeoutFuture = timeoutFuture;
+		if (isDone())
+			timeoutFuture.cancel(false);
+	}
+
+	/**
+	 * Cancels the timeout of an abandoned request, the callbacks are not notified.
+	 */
+	void cancelTimeout() {
+		Future<?> timeout = timeoutFuture;
+		if (timeout != null)
+			timeout.cancel(false);
+	}
+}
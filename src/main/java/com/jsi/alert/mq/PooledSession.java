@@ -0,0 +1,120 @@
+package com.jsi.alert.mq;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.jms.BytesMessage;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import com.jsi.alert.mq.MQSessionProvider.ComponentKey;
+
+/**
+ * A JMS session which is checked out of the <code>MQSessionProvider</code> pool by one
+ * thread at a time. The producers are created lazily and reused between checkouts.
+ */
+public class PooledSession {
+
+	private final Session session;
+	private final Map<ComponentKey, Destination> destinationH;
+	private final Map<ComponentKey, MessageProducer> producerH = new EnumMap<>(ComponentKey.class);
+	// sends to destinations which are only known at send time
+	private MessageProducer anonymousProducer;
+	private final int generation;
+
+	PooledSession(Session session, Map<ComponentKey, ? extends Destination> destinationH, int generation) {
+		this.session = session;
+		this.destinationH = new EnumMap<>(destinationH);
+		this.generation = generation;
+	}
+
+	public TextMessage createTextMessage(String text) throws JMSException {
+		return session.createTextMessage(text);
+	}
+
+	public BytesMessage createBytesMessage() throws JMSException {
+		return session.createBytesMessage();
+	}
+
+	/**
+	 * Returns the producer posting on the components request topic.
+	 *
+	 * @param componentKey
+	 * @return
+	 * @throws JMSException
+	 */
+	public MessageProducer getProducer(ComponentKey componentKey) throws JMSException {
+		MessageProducer producer = producerH.get(componentKey);
+		if (producer == null) {
+			producer = session.createProducer(destinationH.get(componentKey));
+			producerH.put(componentKey, producer);
+		}
+		return producer;
+	}
+
+	/**
+	 * Sends the message on the components request topic.
+	 *
+	 * @param componentKey
+	 * @param msg
+	 * @throws JMSException
+	 */
+	public void send(ComponentKey componentKey, Message msg) throws JMSException {
+		getProducer(componentKey).send(msg);
+	}
+
+	/**
+	 * Sends the message on the components request topic with the given delivery options.
+	 *
+	 * @param componentKey
+	 * @param msg
+	 * @param deliveryMode
+	 * @param priority
+	 * @param timeToLive
+	 * @throws JMSException
+	 */
+	public void send(ComponentKey componentKey, Message msg, int deliveryMode, int priority, long timeToLive) throws JMSException {
+		getProducer(componentKey).send(msg, deliveryMode, priority, timeToLive);
+	}
+
+	/**
+	 * Sends the message to the given destination, used for the topics of single instances
+	 * of replicated components.
+	 *
+	 * @param destination
+	 * @param msg
+	 * @param deliveryMode
+	 * @param priority
+	 * @param timeToLive
+	 * @throws JMSException
+	 */
+	public void send(Destination destination, Message msg, int deliveryMode, int priority, long timeToLive) throws JMSException {
+		if (anonymousProducer == null)
+			anonymousProducer = session.createProducer(null);
+		anonymousProducer.send(destination, msg, deliveryMode, priority, timeToLive);
+	}
+
+	/**
+	 * Returns the generation of the connection which created the session, it changes on every reconnect.
+	 */
+	int getGeneration() {
+		return generation;
+	}
+
+	Session getSession() {
+		return session;
+	}
+
+	void close() throws JMSException {
+		for (MessageProducer producer : producerH.values())
+			producer.close();
+		producerH.clear();
+		if (anonymousProducer != null)
+			anonymousProducer.close();
+		session.close();
+	}
+}
@@ -0,0 +1,131 @@
+package com.jsi.alert.mq;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.mq.ConcurrencyLimiter.PermitCallback;
+
+/**
+ * Limits the number of requests of one priority class in flight. Requests over the
+ * limit wait in a queue, if the queue is full or they wait too long they are rejected.
+ */
+public class PriorityLane {
+
+	private static final Logger log = LoggerFactory.getLogger(PriorityLane.class);
+
+	private final RequestPriority priority;
+	private final int maxRequests;
+	private final int queueSize;
+	private final long queueTimeout;
+	private final ScheduledExecutorService scheduler;
+	private final Deque<Waiter> waitQueue = new ArrayDeque<>();
+
+	private int inFlight = 0;
+
+	/**
+	 * @param priority
+	 * @param maxRequests the maximum number of requests in flight, 0 means unlimited
+	 * @param queueSize the maximum number of waiting requests
+	 * @param queueTimeout the number of milliseconds a request may wait
+	 * @param scheduler rejects the requests which waited too long
+	 */
+	PriorityLane(RequestPriority priority, int maxRequests, int queueSize, long queueTimeout, ScheduledExecutorService scheduler) {
+		this.priority = priority;
+		this.maxRequests = maxRequests;
+		this.queueSize = queueSize;
+		this.queueTimeout = queueTimeout;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Takes a permit and notifies the callback, either immediately or once a request
+	 * in the lane completes. A permitted request must be followed by a call to <code>release</code>.
+	 *
+	 * @param callback
+	 */
+	public void acquire(PermitCallback callback) {
+		Waiter waiter = null;
+		boolean permitted = false;
+		boolean rejected = false;
+		synchronized (this) {
+			if (maxRequests <= 0 || inFlight < maxRequests) {
+				inFlight++;
+				permitted = true;
+			} else if (waitQueue.size() < queueSize) {
+				waiter = new Waiter(callback);
+				waitQueue.add(waiter);
+			} else {
+				rejected = true;
+			}
+		}
+
+		if (permitted) {
+			callback.onPermit();
+		} else if (rejected) {
+			if (log.isDebugEnabled())
+				log.debug("Too many " + priority + " requests waiting, rejecting...");
+			callback.onRejected();
+		} else {
+			scheduleTimeout(waiter);
+		}
+	}
+
+	/**
+	 * Releases the permit of a completed request, the next waiting request is sent.
+	 */
+	public void release() {
+		Waiter next;
+		synchronized (this) {
+			next = waitQueue.poll();
+			if (next == null)
+				inFlight = Math.max(inFlight - 1, 0);
+		}
+
+		if (next != null) {
+			Future<?> timeout = next.timeoutFuture;
+			if (timeout != null)
+				timeout.cancel(false);
+			next.callback.onPermit();
+		}
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public synchronized int getQueueSize() {
+		return waitQueue.size();
+	}
+
+	private void scheduleTimeout(final Waiter waiter) {
+		waiter.timeoutFuture = scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				boolean expired;
+				synchronized (PriorityLane.this) {
+					expired = waitQueue.remove(waiter);
+				}
+				if (expired) {
+					if (log.isDebugEnabled())
+						log.debug(priority + " request waited too long, rejecting...");
+					waiter.callback.onRejected();
+				}
+			}
+		}, queueTimeout, TimeUnit.MILLISECONDS);
+	}
+
+	private static class Waiter {
+		final PermitCallback callback;
+		volatile Future<?> timeoutFuture;
+
+		Waiter(PermitCallback callback) {
+			this.callback = callback;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.jsi.alert.mq;
+
+/**
+ * Sends each request through the <code>PriorityLane</code> of its priority class, the
+ * requests rejected by a full lane fail with a <code>ComponentOverloadedException</code>.
+ */
+public class PriorityLaneExecutor implements MQRequestExecutor {
+
+	private final MQRequestExecutor executor;
+	private final MQSessionProvider provider;
+
+	/**
+	 * @param executor the executor which sends the permitted requests
+	 * @param provider provides the lanes, so they are shared by all the servlets
+	 */
+	public PriorityLaneExecutor(MQRequestExecutor executor, MQSessionProvider provider) {
+		this.executor = executor;
+		this.provider = provider;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.jsi.alert.mq.MQRequestExecutor#execute(com.jsi.alert.mq.MQRequest, com.jsi.alert.mq.ResultCallback)
+	 */
+	@Override
+	public void execute(final MQRequest request, final ResultCallback callback) {
+		final PriorityLane lane = provider.getPriorityLane(request.getPriority());
+
+		lane.acquire(new ConcurrencyLimiter.PermitCallback() {
+			@Override
+			public void onPermit() {
+				executor.execute(request, new ResultCallback() {
+					@Override
+					public void onResult(String resultJSon) {
+						lane.release();
+						callback.onResult(resultJSon);
+					}
+					@Override
+					public void onFailure(Throwable t) {
+						lane.release();
+						callback.onFailure(t);
+					}
+				});
+			}
+			@Override
+			public void onRejected() {
+				callback.onFailure(new ComponentOverloadedException(request.getComponentKey(), ConcurrencyLimiter.RETRY_AFTER));
+			}
+		});
+	}
+}
@@ -0,0 +1,21 @@
+package com.jsi.alert.mq;
+
+/**
+ * A <code>ResultCallback</code> which is also told when the request is sent and when the
+ * reply arrives, before it is parsed, so the time spent parsing doesn't count as the
+ * component's latency.
+ */
+public interface ProgressCallback extends ResultCallback {
+	
+	/**
+	 * Called once the request is sent, the reply might already have arrived.
+	 * 
+	 * @param cancel abandons the request when run: its timeout is cancelled and its reply discarded
+	 */
+	void onSent(Runnable cancel);
+	
+	/**
+	 * Called when the reply arrives, before <code>onResult</code>.
+	 */
+	void onReplyReceived();
+}
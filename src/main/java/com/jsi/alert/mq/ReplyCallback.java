@@ -0,0 +1,22 @@
+package com.jsi.alert.mq;
+
+/**
+ * Receives the outcome of a request sent over the MQ. The methods are called on one of the
+ * callback threads of the <code>MQSessionProvider</code>, never on the JMS listener thread.
+ */
+public interface ReplyCallback {
+
+	/**
+	 * Called when the reply to the request arrives.
+	 * 
+	 * @param reply
+	 */
+	void onReply(MQReply reply);
+	
+	/**
+	 * Called when the request fails or times out.
+	 * 
+	 * @param t
+	 */
+	void onFailure(Throwable t);
+}
@@ -0,0 +1,126 @@
+package com.jsi.alert.mq;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * Reads the ID of the request a reply belongs to without parsing the reply. The ID is
+ * taken from the message properties if the component copied them from the request,
+ * otherwise only the <code>ns1:meta</code> section at the start of the body is scanned.
+ */
+final class ReplyHeaderReader {
+
+	/** The JMS property which carries the ID of the request. */
+	static final String REQUEST_ID_PROPERTY = "alertRequestId";
+
+	// the meta section is at the start of the event, nothing past this is scanned
+	private static final int SCAN_LIMIT = 8192;
+
+	private static final String ID_TAG = "<ns1:eventId>";
+	private static final String META_END_TAG = "</ns1:meta>";
+	private static final byte[] ID_TAG_BYTES = ID_TAG.getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] META_END_TAG_BYTES = META_END_TAG.getBytes(StandardCharsets.US_ASCII);
+
+	private static final ThreadLocal<byte[]> scanBuffer = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[SCAN_LIMIT];
+		}
+	};
+
+	private ReplyHeaderReader() {}
+
+	/**
+	 * Returns the ID of the request the reply belongs to.
+	 *
+	 * @param message
+	 * @param reply
+	 * @param correlationPrefix the prefix of the correlation IDs of the requests sent by this node
+	 * @return the request ID or null if the reply doesn't contain one
+	 * @throws JMSException
+	 * @throws IOException
+	 */
+	static String readRequestId(Message message, MQReply reply, String correlationPrefix) throws JMSException, IOException {
+		String requestId = message.getStringProperty(REQUEST_ID_PROPERTY);
+		if (requestId != null)
+			return requestId;
+
+		String correlationId = message.getJMSCorrelationID();
+		if (correlationId != null && correlationId.startsWith(correlationPrefix))
+			return correlationId.substring(correlationPrefix.length());
+
+		return reply.isText() ? scanText(reply.getText()) : scanBytes(reply);
+	}
+
+	/**
+	 * Finds the event ID in the meta section of a text reply.
+	 */
+	private static String scanText(String text) {
+		int limit = Math.min(text.length(), SCAN_LIMIT);
+
+		for (int i = 0; i < limit; i++) {
+			if (text.charAt(i) != '<') continue;
+
+			if (text.regionMatches(i, META_END_TAG, 0, META_END_TAG.length()))
+				return null;
+			if (text.regionMatches(i, ID_TAG, 0, ID_TAG.length())) {
+				int start = i + ID_TAG.length();
+				int end = start;
+				while (end < text.length() && isDigit(text.charAt(end)))
+					end++;
+				return end > start ? text.substring(start, end) : null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Decodes only the start of a binary reply and finds the event ID in its meta section.
+	 */
+	private static String scanBytes(MQReply reply) throws IOException {
+		byte[] buf = scanBuffer.get();
+		int len = 0;
+
+		InputStream in = reply.getInputStream();
+		try {
+			int n;
+			while (len < buf.length && (n = in.read(buf, len, buf.length - len)) >= 0)
+				len += n;
+		} finally {
+			in.close();
+		}
+
+		for (int i = 0; i < len; i++) {
+			if (buf[i] != '<') continue;
+
+			if (regionMatches(buf, i, len, META_END_TAG_BYTES))
+				return null;
+			if (regionMatches(buf, i, len, ID_TAG_BYTES)) {
+				int start = i + ID_TAG_BYTES.length;
+				int end = start;
+				while (end < len && isDigit((char) buf[end]))
+					end++;
+				return end > start ? new String(buf, start, end - start, StandardCharsets.US_ASCII) : null;
+			}
+		}
+		return null;
+	}
+
+	private static boolean regionMatches(byte[] buf, int offset, int len, byte[] tag) {
+		if (offset + tag.length > len) return false;
+
+		for (int i = 0; i < tag.length; i++) {
+			if (buf[offset + i] != tag[i])
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+}
@@ -0,0 +1,114 @@
+package com.jsi.alert.mq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces identical requests which are in flight at the same time. Only the first request
+ * is sent over the MQ, the parsed result is handed to everyone who asked for it in the meantime.
+ * Requests without a key are passed through.
+ */
+public class RequestCoalescer implements MQRequestExecutor {
+	
+	private static final Logger log = LoggerFactory.getLogger(RequestCoalescer.class);
+	
+	private final MQRequestExecutor executor;
+	private final ConcurrentMap<String, InFlight> inFlightH = new ConcurrentHashMap<>();
+	
+	public RequestCoalescer(MQRequestExecutor executor) {
+		this.executor = executor;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.jsi.alert.mq.MQRequestExecutor#execute(com.jsi.alert.mq.MQRequest, com.jsi.alert.mq.ResultCallback)
+	 */
+	@Override
+	public void execute(MQRequest request, ResultCallback callback) {
+		String key = request.getKey();
+		if (key == null) {
+			executor.execute(request, callback);
+			return;
+		}
+		
+		while (true) {
+			InFlight inFlight = inFlightH.get(key);
+			if (inFlight == null) {
+				InFlight created = new InFlight(key, callback);
+				if (inFlightH.putIfAbsent(key, created) == null) {
+					executor.execute(request, created);
+					return;
+				}
+			} else if (inFlight.join(callback)) {
+				if (log.isDebugEnabled())
+					log.debug("Coalesced request with an identical request in flight: " + request.getComponentKey());
+				return;
+			}
+			// the request in flight has just finished, try again
+		}
+	}
+	
+	/**
+	 * Returns the number of distinct requests currently in flight.
+	 */
+	public int getInFlightCount() {
+		return inFlightH.size();
+	}
+	
+	/**
+	 * A request in flight together with everyone waiting for its result.
+	 */
+	private class InFlight implements ResultCallback {
+		
+		private final String key;
+		private final List<ResultCallback> callbacks = new ArrayList<>();
+		private boolean done = false;
+		
+		InFlight(String key, ResultCallback first) {
+			this.key = key;
+			callbacks.add(first);
+		}
+		
+		/**
+		 * Adds a waiter, returns false if the result was already handed out.
+		 */
+		synchronized boolean join(ResultCallback callback) {
+			if (done) return false;
+			callbacks.add(callback);
+			return true;
+		}
+		
+		private synchronized List<ResultCallback> finish() {
+			inFlightH.remove(key, this);
+			done = true;
+			return callbacks;
+		}
+
+		@Override
+		public void onResult(String resultJSon) {
+			for (ResultCallback callback : finish()) {
+				try {
+					callback.onResult(resultJSon);
+				} catch (Throwable t) {
+					log.error("A coalesced request failed to process the result!", t);
+				}
+			}
+		}
+
+		@Override
+		public void onFailure(Throwable t) {
+			for (ResultCallback callback : finish()) {
+				try {
+					callback.onFailure(t);
+				} catch (Throwable t1) {
+					log.error("A coalesced request failed to process the failure!", t1);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.jsi.alert.mq;
+
+import javax.jms.Message;
+
+import com.jsi.alert.utils.Configuration;
+
+/**
+ * The priority class of a request. Each class is sent with its own JMS priority and
+ * through its own <code>PriorityLane</code>, so short interactive requests don't wait
+ * behind heavy queries.
+ */
+public enum RequestPriority {
+	INTERACTIVE(7),
+	NORMAL(Message.DEFAULT_PRIORITY),
+	BULK(1);
+
+	private final int jmsPriority;
+
+	private RequestPriority(int jmsPriority) {
+		this.jmsPriority = jmsPriority;
+	}
+
+	public int getJmsPriority() {
+		return jmsPriority;
+	}
+
+	/**
+	 * Returns the priority class of the query type as configured in <code>lane.interactive.types</code>
+	 * and <code>lane.bulk.types</code>.
+	 *
+	 * @param queryType
+	 * @return
+	 */
+	public static RequestPriority forQueryType(String queryType) {
+		if (queryType == null) return NORMAL;
+
+		String type = queryType.toLowerCase();
+		if (Configuration.LANE_INTERACTIVE_TYPES.contains(type))
+			return INTERACTIVE;
+		if (Configuration.LANE_BULK_TYPES.contains(type))
+			return BULK;
+		return NORMAL;
+	}
+}
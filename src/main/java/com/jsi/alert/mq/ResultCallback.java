@@ -0,0 +1,22 @@
+package com.jsi.alert.mq;
+
+/**
+ * Receives the result of an <code>MQRequest</code>, that is the reply already parsed into
+ * the JSON which is sent to the client.
+ */
+public interface ResultCallback {
+	
+	/**
+	 * Called with the parsed reply.
+	 * 
+	 * @param resultJSon
+	 */
+	void onResult(String resultJSon);
+	
+	/**
+	 * Called when the request fails, times out or the reply can't be parsed.
+	 * 
+	 * @param t
+	 */
+	void onFailure(Throwable t);
+}
@@ -0,0 +1,76 @@
+package com.jsi.alert.mq;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.jsi.alert.mq.MQSessionProvider.ComponentKey;
+import com.jsi.alert.utils.Configuration;
+
+/**
+ * Decides how long to wait for the reply to a request. The timeout is taken from the
+ * explicit overrides in the configuration if present, otherwise it's derived from the
+ * observed round trip times of the same component and query type.
+ */
+public class TimeoutPolicy {
+	
+	private static final double TIMEOUT_PERCENTILE = 0.99;
+	
+	private final ConcurrentMap<String, LatencyTracker> trackerH = new ConcurrentHashMap<>();
+	
+	/**
+	 * Returns the timeout in milliseconds for requests of the query type sent to the component.
+	 * 
+	 * @param componentKey
+	 * @param queryType
+	 * @return
+	 */
+	public long getTimeout(ComponentKey componentKey, String queryType) {
+		String componentName = componentKey.name().toLowerCase();
+		
+		Long override = Configuration.TIMEOUT_OVERRIDES.get(componentName + "." + queryType);
+		if (override == null)
+			override = Configuration.TIMEOUT_OVERRIDES.get(componentName);
+		if (override != null)
+			return override;
+		
+		if (!Configuration.TIMEOUT_ADAPTIVE)
+			return Configuration.REQUEST_TIMEOUT;
+		
+		long percentile = getTracker(componentKey, queryType).getPercentile(TIMEOUT_PERCENTILE);
+		if (percentile < 0)
+			return Configuration.REQUEST_TIMEOUT;
+		
+		long timeout = (long) (percentile * Configuration.TIMEOUT_MULTIPLIER);
+		return Math.max(Configuration.TIMEOUT_MIN, Math.min(timeout, Configuration.TIMEOUT_MAX));
+	}
+	
+	/**
+	 * Records the round trip time of a request. Timed out requests should be recorded with
+	 * their timeout, so that the timeout grows when the component slows down.
+	 * 
+	 * @param componentKey
+	 * @param queryType
+	 * @param latency
+	 */
+	public void record(ComponentKey componentKey, String queryType, long latency) {
+		getTracker(componentKey, queryType).record(latency);
+	}
+	
+	/**
+	 * Returns the latency tracker of the component and query type.
+	 * 
+	 * @param componentKey
+	 * @param queryType
+	 * @return
+	 */
+	public LatencyTracker getTracker(ComponentKey componentKey, String queryType) {
+		String key = componentKey + "." + queryType;
+		LatencyTracker tracker = trackerH.get(key);
+		if (tracker == null) {
+			LatencyTracker created = new LatencyTracker();
+			tracker = trackerH.putIfAbsent(key, created);
+			if (tracker == null) tracker = created;
+		}
+		return tracker;
+	}
+}
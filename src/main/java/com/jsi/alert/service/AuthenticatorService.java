@@ -2,6 +2,9 @@ package com.jsi.alert.service;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 
 import javax.servlet.http.HttpSession;
 import javax.ws.rs.core.MediaType;
@@ -14,15 +17,22 @@ import org.slf4j.LoggerFactory;
 import com.jsi.alert.model.UserPrincipal;
 import com.jsi.alert.service.UniversalService.RequestType;
 import com.jsi.alert.utils.Configuration;
+import com.jsi.alert.utils.ThreadPools;
 
 /**
  * A utilities class which contacts a web service to fetch the logged in users data
- * and see if they are authenticated.
+ * and see if they are authenticated. The authenticated users are cached for
+ * <code>login.authenticate.cache.ttl</code> ms and revalidated in the background
+ * before they expire, so most requests don't wait for the web service.
  */
 public class AuthenticatorService {
 	
 	private static final Logger log = LoggerFactory.getLogger(AuthenticatorService.class);
 	
+	private static final ConcurrentMap<String, CachedUser> userCache = new ConcurrentHashMap<>();
+	
+	private static final ExecutorService revalidator = ThreadPools.newBlockingExecutor("auth-revalidator", 1);
+	
 	
 	/**
 	 * Contacts the web service to see, if the user is authenticated.
@@ -75,11 +85,94 @@ public class AuthenticatorService {
 		
 		String email = user.getEmail();
 		if (log.isDebugEnabled()) log.debug("Authenticating user: " + email + "...");
-		UserPrincipal userInfo = getUserInfo(email);
+		UserPrincipal userInfo = getCachedUserInfo(email);
 		
 		if (userInfo == null) session.removeAttribute(Configuration.USER_PRINCIPAL);
 		else session.setAttribute(Configuration.USER_PRINCIPAL, userInfo);
 		
 		return userInfo != null;
 	}
+	
+	/**
+	 * Removes the user from the cache, so the next request is authenticated by the web
+	 * service. Called when the user logs in or out.
+	 * 
+	 * @param email
+	 */
+	public static void invalidate(String email) {
+		if (email == null) return;
+		
+		if (log.isDebugEnabled()) log.debug("Invalidating the cached authentication of user: " + email + "...");
+		userCache.remove(email);
+	}
+	
+	/**
+	 * Stops the revalidation thread, called when the application is undeployed.
+	 */
+	public static void shutdown() {
+		revalidator.shutdownNow();
+	}
+	
+	/**
+	 * Returns the cached info of the user if it hasn't expired, otherwise contacts the web
+	 * service. Only authenticated users are cached, so a failure of the web service or a
+	 * fresh login is never hidden by the cache.
+	 * 
+	 * @param email
+	 * @return
+	 */
+	private static UserPrincipal getCachedUserInfo(final String email) {
+		if (Configuration.AUTH_CACHE_TTL <= 0)
+			return getUserInfo(email);
+		
+		final CachedUser cached = userCache.get(email);
+		long now = System.currentTimeMillis();
+		
+		if (cached != null && now < cached.expiresAt) {
+			if (now >= cached.refreshAt && !revalidator.isShutdown() && cached.startRefresh()) {
+				revalidator.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (log.isDebugEnabled()) log.debug("Revalidating user: " + email + "...");
+						UserPrincipal userInfo = getUserInfo(email);
+						if (userInfo != null)
+							userCache.replace(email, cached, new CachedUser(userInfo));
+						else
+							userCache.remove(email, cached);
+					}
+				});
+			}
+			return cached.user;
+		}
+		
+		UserPrincipal userInfo = getUserInfo(email);
+		if (userInfo != null)
+			userCache.put(email, new CachedUser(userInfo));
+		else
+			userCache.remove(email);
+		return userInfo;
+	}
+	
+	private static class CachedUser {
+		final UserPrincipal user;
+		final long refreshAt;
+		final long expiresAt;
+		private boolean refreshing = false;
+		
+		CachedUser(UserPrincipal user) {
+			long now = System.currentTimeMillis();
+			this.user = user;
+			this.expiresAt = now + Configuration.AUTH_CACHE_TTL;
+			this.refreshAt = now + (long) (Configuration.AUTH_CACHE_TTL * Configuration.AUTH_CACHE_REFRESH);
+		}
+		
+		/**
+		 * @return true if the caller should revalidate the user
+		 */
+		synchronized boolean startRefresh() {
+			if (refreshing) return false;
+			refreshing = true;
+			return true;
+		}
+	}
 }
@@ -1,6 +1,5 @@
 package com.jsi.alert.service;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,7 +22,7 @@ public class NotificationService {
 	 * Fetches notifications for the specified user.
 	 * 
 	 * @param uuid
-	 * @return
+	 * @return the notifications or null if they couldn't be fetched
 	 */
 	public static List<Notification> fetchNotifications(String uuid) {
 		if (log.isDebugEnabled())
@@ -45,11 +44,11 @@ public class NotificationService {
 				return MessageParser.parseNotificationRSS(response);
 			} else {
 				log.warn("Failed to fetch notifications for user: " + uuid);
-				return new ArrayList<>();
+				return null;
 			}
 		} catch (Throwable t) {
 			log.error("An exception occurred while fetching notifications for user: " + uuid, t);
-			return new ArrayList<>();
+			return null;
 		}
 	}
 }
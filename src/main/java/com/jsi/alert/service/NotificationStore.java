@@ -0,0 +1,178 @@
+package com.jsi.alert.service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.model.notification.Notification;
+import com.jsi.alert.utils.Configuration;
+import com.jsi.alert.utils.ThreadPools;
+
+/**
+ * Keeps the parsed notifications of the active users in memory and refreshes them in
+ * the background, so rendering a page doesn't wait for the RSS feed. The feeds of the
+ * users who were active recently are refreshed every <code>notifications.refresh.min</code>
+ * ms, the longer a user is idle the less often their feed is refreshed (at most every
+ * <code>notifications.refresh.max</code> ms). Users idle for <code>notifications.idle.timeout</code>
+ * ms are forgotten. If the feed can't be fetched, the last notifications are kept.
+ */
+public class NotificationStore {
+
+	private static final Logger log = LoggerFactory.getLogger(NotificationStore.class);
+
+	private static NotificationStore instance;
+
+	private final ConcurrentMap<String, UserFeed> feedH = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService scheduler;
+	private final ExecutorService fetchExecutor;
+
+	private NotificationStore() {
+		scheduler = Executors.newSingleThreadScheduledExecutor(ThreadPools.newThreadFactory("notification-scheduler"));
+		// the fetches wait for the RSS feed
+		fetchExecutor = ThreadPools.newBlockingExecutor("notification-fetcher", Configuration.NOTIFICATION_REFRESH_THREADS);
+
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					refreshDue();
+				} catch (Throwable t) {
+					log.error("Failed to schedule the notification refreshes!", t);
+				}
+			}
+		}, Configuration.NOTIFICATION_REFRESH_TICK, Configuration.NOTIFICATION_REFRESH_TICK, TimeUnit.MILLISECONDS);
+	}
+
+	public static synchronized NotificationStore getInstance() {
+		if (instance == null)
+			instance = new NotificationStore();
+		return instance;
+	}
+
+	/**
+	 * Stops the refresh threads, called when the application is undeployed.
+	 */
+	public static synchronized void shutdown() {
+		if (instance == null) return;
+
+		instance.scheduler.shutdownNow();
+		instance.fetchExecutor.shutdownNow();
+		instance = null;
+	}
+
+	/**
+	 * Returns the notifications of the user. The first call for a user fetches them, the
+	 * later calls return the notifications from the last background refresh. When the user
+	 * returns after being idle, their feed is refreshed on the next tick.
+	 *
+	 * @param uuid
+	 * @return
+	 */
+	public List<Notification> getNotifications(String uuid) {
+		UserFeed feed = feedH.get(uuid);
+		if (feed == null) {
+			feed = new UserFeed(uuid);
+			UserFeed existing = feedH.putIfAbsent(uuid, feed);
+			if (existing != null) feed = existing;
+		}
+
+		long now = System.currentTimeMillis();
+		long idleTime = now - feed.lastAccess;
+		feed.lastAccess = now;
+		// the feed of an idle user was refreshed rarely
+		if (idleTime > Configuration.NOTIFICATION_REFRESH_MIN && feed.nextRefresh > now)
+			feed.nextRefresh = now;
+
+		// only the first fetch is waited for, a failed one is retried in the background
+		if (feed.nextRefresh == 0) {
+			synchronized (feed) {
+				if (feed.nextRefresh == 0)
+					refresh(feed);
+			}
+		}
+		List<Notification> notifications = feed.notifications;
+		return notifications != null ? notifications : Collections.<Notification>emptyList();
+	}
+
+	/**
+	 * Forgets the idle users and starts refreshing the feeds which are due.
+	 */
+	private void refreshDue() {
+		long now = System.currentTimeMillis();
+
+		for (Map.Entry<String, UserFeed> entry : feedH.entrySet()) {
+			final UserFeed feed = entry.getValue();
+
+			if (now - feed.lastAccess > Configuration.NOTIFICATION_IDLE_TIMEOUT) {
+				if (log.isDebugEnabled()) log.debug("User " + feed.uuid + " is idle, forgetting their notifications...");
+				feedH.remove(entry.getKey(), feed);
+				continue;
+			}
+
+			if (now < feed.nextRefresh || !feed.startRefresh()) continue;
+
+			fetchExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						synchronized (feed) {
+							// the first fetch may have just been done by a request
+							if (System.currentTimeMillis() >= feed.nextRefresh)
+								refresh(feed);
+						}
+					} finally {
+						feed.endRefresh();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Fetches the feed and schedules the next refresh, the refresh interval follows the
+	 * time since the user was last active.
+	 */
+	private void refresh(UserFeed feed) {
+		List<Notification> notifications = NotificationService.fetchNotifications(feed.uuid);
+		if (notifications != null)
+			feed.notifications = Collections.unmodifiableList(notifications);
+
+		long now = System.currentTimeMillis();
+		long interval = Math.max(Configuration.NOTIFICATION_REFRESH_MIN, Math.min(now - feed.lastAccess, Configuration.NOTIFICATION_REFRESH_MAX));
+		feed.nextRefresh = now + interval;
+
+		if (log.isDebugEnabled())
+			log.debug((notifications != null ? "Refreshed" : "Failed to refresh") + " notifications of user " + feed.uuid + ", next refresh in " + interval + "ms...");
+	}
+
+	private static class UserFeed {
+		final String uuid;
+		volatile List<Notification> notifications;
+		volatile long lastAccess;
+		volatile long nextRefresh;
+		private boolean refreshing = false;
+
+		UserFeed(String uuid) {
+			this.uuid = uuid;
+		}
+
+		synchronized boolean startRefresh() {
+			if (refreshing) return false;
+			refreshing = true;
+			return true;
+		}
+
+		synchronized void endRefresh() {
+			refreshing = false;
+		}
+	}
+}
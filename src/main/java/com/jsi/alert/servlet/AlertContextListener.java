@@ -0,0 +1,40 @@
+package com.jsi.alert.servlet;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.mq.MQSessionProvider;
+import com.jsi.alert.service.AuthenticatorService;
+import com.jsi.alert.service.NotificationStore;
+
+/**
+ * Releases the resources of the application when it is undeployed, so no threads or
+ * connections outlive it.
+ */
+public class AlertContextListener implements ServletContextListener {
+	
+	private static final Logger log = LoggerFactory.getLogger(AlertContextListener.class);
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.servlet.ServletContextListener#contextInitialized(javax.servlet.ServletContextEvent)
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent event) {}
+
+	/*
+	 * (non-Javadoc)
+	 * @see javax.servlet.ServletContextListener#contextDestroyed(javax.servlet.ServletContextEvent)
+	 */
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		log.info("Shutting down...");
+		
+		MQSessionProvider.shutdown();
+		AuthenticatorService.shutdown();
+		NotificationStore.shutdown();
+	}
+}
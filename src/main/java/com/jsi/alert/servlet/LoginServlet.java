@@ -12,6 +12,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jsi.alert.model.UserPrincipal;
+import com.jsi.alert.service.AuthenticatorService;
 import com.jsi.alert.utils.Configuration;
 
 /**
@@ -45,6 +46,9 @@ public class LoginServlet extends HttpServlet {
 				UserPrincipal user = new UserPrincipal();
 				user.setEmail(email);
 				
+				// the user might have been cached before they logged in
+				AuthenticatorService.invalidate(email);
+				
 				session.setAttribute(Configuration.USER_PRINCIPAL, user);
 				response.sendRedirect("index.xhtml");
 			} else {
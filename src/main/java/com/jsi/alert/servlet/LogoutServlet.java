@@ -0,0 +1,54 @@
+package com.jsi.alert.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jsi.alert.model.UserPrincipal;
+import com.jsi.alert.service.AuthenticatorService;
+import com.jsi.alert.utils.Configuration;
+
+/**
+ * A <code>Servlet</code> which forgets the logged in user and redirects to the logout page.
+ */
+public class LogoutServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 6203118577610473529L;
+	
+	private static final Logger log = LoggerFactory.getLogger(LogoutServlet.class);
+	
+	/*
+	 * (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if (log.isInfoEnabled()) log.info("Received logout request...");
+		
+		HttpSession session = request.getSession(false);
+		if (session != null) {
+			UserPrincipal user = (UserPrincipal) session.getAttribute(Configuration.USER_PRINCIPAL);
+			if (user != null)
+				AuthenticatorService.invalidate(user.getEmail());
+			session.invalidate();
+		}
+		
+		response.sendRedirect(Configuration.LOGOUT_URL);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see javax.servlet.http.HttpServlet#doPost(javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		doGet(request, response);
+	}
+}
@@ -1,31 +1,71 @@
 package com.jsi.alert.servlet;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.jms.BytesMessage;
+import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
-import javax.jms.MessageConsumer;
-import javax.jms.MessageProducer;
-import javax.jms.Session;
-import javax.jms.TextMessage;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.jsi.alert.cache.CachingExecutor;
+import com.jsi.alert.cache.DetailsCache;
+import com.jsi.alert.cache.ResponseCache;
+import com.jsi.alert.mq.CircuitBreakerExecutor;
+import com.jsi.alert.mq.ComponentOverloadedException;
+import com.jsi.alert.mq.ComponentUnavailableException;
+import com.jsi.alert.mq.ConcurrencyLimiter;
+import com.jsi.alert.mq.ConcurrencyLimiterExecutor;
+import com.jsi.alert.mq.DeliveryProfile;
+import com.jsi.alert.mq.HedgingExecutor;
+import com.jsi.alert.mq.InstanceRouter;
+import com.jsi.alert.mq.InvalidRequestException;
+import com.jsi.alert.mq.MQReply;
+import com.jsi.alert.mq.MQReplyDispatcher;
+import com.jsi.alert.mq.MQRequest;
+import com.jsi.alert.mq.MQRequestExecutor;
 import com.jsi.alert.mq.MQSessionProvider;
 import com.jsi.alert.mq.MQSessionProvider.ComponentKey;
+import com.jsi.alert.mq.PayloadCodec;
+import com.jsi.alert.mq.PendingReply;
+import com.jsi.alert.mq.PooledSession;
+import com.jsi.alert.mq.PriorityLaneExecutor;
+import com.jsi.alert.mq.ProgressCallback;
+import com.jsi.alert.mq.ReplyCallback;
+import com.jsi.alert.mq.RequestCoalescer;
+import com.jsi.alert.mq.RequestPriority;
+import com.jsi.alert.mq.ResultCallback;
+import com.jsi.alert.mq.TimeoutPolicy;
 import com.jsi.alert.utils.Configuration;
+import com.jsi.alert.utils.ThreadPools;
+import com.jsi.alert.utils.Utils;
 
 /**
- * An abstract <code>Servlet</code> which send a sync request to the KEUI component.
+ * An abstract <code>Servlet</code> which sends requests to the KEUI and API components. The
+ * requests are processed asynchronously, so no container thread waits for the MQ.
  */
 public abstract class MQServlet extends HttpServlet {
        
@@ -33,12 +73,24 @@ public abstract class MQServlet extends HttpServlet {
 	
 	private static final Logger log = LoggerFactory.getLogger(MQServlet.class);
 	
-	private static final String REQUEST_ID_TAG = "<ns1:eventId>\\d+</ns1:eventId>";
-	private static final Pattern REQUEST_ID_PATTERN = Pattern.compile(REQUEST_ID_TAG);
+	// the container times out a bit later, so the MQ timeout fires first
+	private static final long ASYNC_TIMEOUT_MARGIN = 1000;
 	
-	private Session mqSession;
-	protected Map<ComponentKey, MessageProducer> producerH;
-	protected Map<ComponentKey, MessageConsumer> consumerH;
+	private static final String REQUEST_ENCODING_TEXT = "text";
+	
+	private MQSessionProvider provider;
+	private TimeoutPolicy timeoutPolicy;
+	protected Map<ComponentKey, MQReplyDispatcher> dispatcherH;
+	
+	private MQRequestExecutor requestExecutor;
+	private ExecutorService handlerExecutor;
+	
+	/**
+	 * A handler which blocks, e.g. on a call to a web service.
+	 */
+	protected interface BlockingHandler {
+		void handle(HttpServletRequest request, HttpServletResponse response) throws Exception;
+	}
     
 	/*
 	 * (non-Javadoc)
@@ -55,126 +107,485 @@ public abstract class MQServlet extends HttpServlet {
 			log.error(t.getMessage(), t);
 			throw new ServletException(t);
 		}
+    	
+    	handlerExecutor = ThreadPools.newBlockingExecutor(getServletName() + "-handler", Configuration.HANDLER_THREADS);
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see javax.servlet.GenericServlet#destroy()
+     */
+    @Override
+    public void destroy() {
+    	if (handlerExecutor != null)
+    		handlerExecutor.shutdown();
     }
     
     /**
-     * Creates the MQ producer and consumer.
+     * Fetches the session provider and the reply dispatchers.
      * @throws JMSException 
      * @throws IOException 
      */
     private void initMQ() throws JMSException, IOException {
-    	MQSessionProvider provider = MQSessionProvider.getInstance();
-    	
-    	mqSession = provider.getSession();
+    	provider = MQSessionProvider.getInstance();
+    	timeoutPolicy = provider.getTimeoutPolicy();
     	
-    	producerH = new HashMap<>();
-    	consumerH = new HashMap<>();
+    	dispatcherH = new HashMap<>();
     	
-    	producerH.put(ComponentKey.KEUI, provider.getKEUIProducer());
-    	producerH.put(ComponentKey.API, provider.getAPIProducer());
+    	dispatcherH.put(ComponentKey.KEUI, provider.getDispatcher(ComponentKey.KEUI));
+    	dispatcherH.put(ComponentKey.API, provider.getDispatcher(ComponentKey.API));
     	
-    	consumerH.put(ComponentKey.KEUI, provider.getKEUIConsumer());
-    	consumerH.put(ComponentKey.API, provider.getAPIConsumer());
+    	// identical requests in flight at the same time share one MQ round trip
+    	MQRequestExecutor mqExecutor = new MQRequestExecutor() {
+    		@Override
+    		public void execute(MQRequest request, ResultCallback callback) {
+    			executeAsync(request, callback);
+    		}
+    	};
+    	requestExecutor = new CachingExecutor(new CachingExecutor(new RequestCoalescer(new CircuitBreakerExecutor(new PriorityLaneExecutor(new HedgingExecutor(new ConcurrencyLimiterExecutor(mqExecutor, provider), provider), provider), provider)), DetailsCache.getInstance()), ResponseCache.getInstance());
     }
     
-    private void sendMessage(String requestMsg, ComponentKey componentKey) throws JMSException {
+    /**
+     * Sends the request message, the deadline is sent along as a message property,
+     * so the component can drop the request once nobody is waiting for the reply anymore.
+     * 
+     * @param requestMsg
+     * @param requestId
+     * @param componentKey
+     * @param priority
+     * @param timeout the timeout of the request in milliseconds
+     * @param instance the instance of a replicated component, -1 sends the request on the components request topic
+     * @throws JMSException
+     */
+    private void sendMessage(String requestMsg, String requestId, ComponentKey componentKey, RequestPriority priority, long timeout, int instance) throws JMSException {
     	if (log.isDebugEnabled()) {
     		log.debug("Sending message to " + componentKey + " component...");
     		if (Configuration.LOG_EVENTS)
     			log.debug(requestMsg);
     	}
     	
-    	MessageProducer producer = producerH.get(componentKey);
-    	Message msg = mqSession.createTextMessage(requestMsg);
-    	producer.send(msg);
+    	// JMS sessions are single threaded, so each send checks out its own
+    	PooledSession session = provider.borrowSession();
+    	try {
+    		Message msg = createMessage(session, requestMsg);
+    		msg.setJMSCorrelationID(MQReplyDispatcher.getCorrelationId(requestId));
+    		msg.setStringProperty(MQReplyDispatcher.NODE_ID_PROPERTY, Configuration.NODE_ID);
+    		msg.setStringProperty(MQReplyDispatcher.REQUEST_ID_PROPERTY, requestId);
+    		msg.setLongProperty(MQReplyDispatcher.DEADLINE_PROPERTY, System.currentTimeMillis() + timeout);
+    		
+    		Destination replyTo = provider.getReplyDestination(componentKey);
+    		if (replyTo != null)
+    			msg.setJMSReplyTo(replyTo);
+    		
+    		DeliveryProfile delivery = provider.getDeliveryProfile(componentKey);
+    		if (instance < 0)
+    			session.send(componentKey, msg, delivery.getDeliveryMode(), priority.getJmsPriority(), delivery.getTimeToLive(timeout));
+    		else
+    			session.send(provider.getInstanceDestination(componentKey, instance), msg, delivery.getDeliveryMode(), priority.getJmsPriority(), delivery.getTimeToLive(timeout));
+    	} finally {
+    		provider.releaseSession(session);
+    	}
     	
     	if (log.isDebugEnabled())
     		log.debug("Message sent!");
     }
 	
+    /**
+     * Creates a text message or, if the requests are encoded, a bytes message. Either way,
+     * the component is told which encodings it may use for the reply.
+     * 
+     * @param session
+     * @param requestMsg
+     * @return
+     * @throws JMSException
+     */
+    private Message createMessage(PooledSession session, String requestMsg) throws JMSException {
+    	Message msg;
+    	if (REQUEST_ENCODING_TEXT.equals(Configuration.MQ_REQUEST_ENCODING)) {
+    		msg = session.createTextMessage(requestMsg);
+    	} else {
+    		BytesMessage bytesMsg = session.createBytesMessage();
+    		try {
+    			bytesMsg.writeBytes(PayloadCodec.encode(requestMsg, Configuration.MQ_REQUEST_ENCODING));
+    		} catch (IOException e) {
+    			JMSException jmsEx = new JMSException("Failed to encode the request: " + e.getMessage());
+    			jmsEx.setLinkedException(e);
+    			throw jmsEx;
+    		}
+    		bytesMsg.setStringProperty(PayloadCodec.CONTENT_ENCODING_PROPERTY, Configuration.MQ_REQUEST_ENCODING);
+    		msg = bytesMsg;
+    	}
+    	
+    	if (Configuration.MQ_ACCEPT_ENCODING != null)
+    		msg.setStringProperty(PayloadCodec.ACCEPT_ENCODING_PROPERTY, Configuration.MQ_ACCEPT_ENCODING);
+    	return msg;
+    }
+	
 	/**
-	 * Receives a message, with request ID matching the parameter, from the in topic.
+	 * Sends the request and returns immediately, the callback is notified once the
+	 * reply arrives or the request times out. The request times out at its deadline, which was
+	 * set when it arrived, so the time it waited in the queues is subtracted from its timeout. If
+	 * no deadline was set, the timeout is decided by the <code>TimeoutPolicy</code>. The round trip
+	 * time is fed back to the policy.
 	 * 
-	 * @param requestID
-	 * @return The received message
-	 * @throws ServletException 
-	 * @throws JMSException 
+	 * @param mqRequest
+	 * @param callback
+	 * @return the ID of the request, or null if it failed before it was sent
 	 */
-	private String receiveMessage(String requestID, ComponentKey componentKey) throws ServletException, JMSException {
-		if (log.isDebugEnabled())
-			log.debug("Receiving response from the " + componentKey + " component...");
-		
-		MessageConsumer consumer = consumerH.get(componentKey);
-		
-		// loop until you get the response with the correct ID
-		String receivedID = null;
-		String responseMsg = null;
-		long beginTime = System.currentTimeMillis();
-		while (!requestID.equals(receivedID)) {
-			// check if KEUI is taking too long
-			if (System.currentTimeMillis() - beginTime > Configuration.REQUEST_TIMEOUT)
-				throw new ServletException(componentKey + " timed out!");
+	protected String getMqResponseAsync(MQRequest mqRequest, final ReplyCallback callback) {
+		final ComponentKey componentKey = mqRequest.getComponentKey();
+		final String queryType = mqRequest.getQueryType();
+		MQReplyDispatcher dispatcher = dispatcherH.get(componentKey);
+		
+		String requestId = Utils.genRequestID();
+		try {
+			String requestMsg;
+			try {
+				requestMsg = mqRequest.createMessage(requestId);
+			} catch (Exception e) {
+				throw new InvalidRequestException(e);
+			}
 			
-			Message receivedMsg = consumer.receive(2000);
-			if (receivedMsg instanceof TextMessage) {
-				TextMessage received = (TextMessage) receivedMsg;
-				responseMsg = received.getText();
+			final long startTime = System.currentTimeMillis();
+			long deadline = mqRequest.getDeadline() > 0 ? mqRequest.getDeadline() : startTime + timeoutPolicy.getTimeout(componentKey, queryType);
+			final long timeout = deadline - startTime;
+			// the request spent all of its time in the queues
+			if (timeout <= 0)
+				throw new ComponentOverloadedException(componentKey, ConcurrencyLimiter.RETRY_AFTER);
+			
+			// the same query goes to the same instance, so its caches stay warm
+			final InstanceRouter router = provider.getInstanceRouter(componentKey);
+			final int instance = router != null ? router.route(mqRequest.getKey() != null ? mqRequest.getKey() : requestId) : -1;
+			
+			PendingReply pending = dispatcher.register(requestId, timeout);
+			pending.addCallback(new ReplyCallback() {
+				@Override
+				public void onReply(MQReply reply) {
+					timeoutPolicy.record(componentKey, queryType, System.currentTimeMillis() - startTime);
+					if (router != null)
+						router.onSuccess(instance);
+					callback.onReply(reply);
+				}
+				@Override
+				public void onFailure(Throwable t) {
+					// a timed out request took at least as long as the timeout
+					if (t instanceof TimeoutException) {
+						timeoutPolicy.record(componentKey, queryType, timeout);
+						if (router != null)
+							router.onFailure(instance);
+					}
+					callback.onFailure(t);
+				}
+			});
+			
+			sendMessage(requestMsg, requestId, componentKey, mqRequest.getPriority(), timeout, instance);
+			return requestId;
+		} catch (Throwable t) {
+			// if the request was registered, failing it notifies the callback
+			if (!dispatcher.fail(requestId, t))
+				callback.onFailure(t);
+			return null;
+		}
+	}
+	
+	/**
+	 * Sends the request and parses the reply on the callback thread.
+	 * 
+	 * @param mqRequest
+	 * @param callback
+	 */
+	private void executeAsync(final MQRequest mqRequest, final ResultCallback callback) {
+		final String requestId = getMqResponseAsync(mqRequest, new ReplyCallback() {
+			@Override
+			public void onReply(MQReply reply) {
+				if (callback instanceof ProgressCallback)
+					((ProgressCallback) callback).onReplyReceived();
 				
-				// check the ID
-				Matcher matcher = REQUEST_ID_PATTERN.matcher(responseMsg);				
-				if (matcher.find()) {
-					String idTag = matcher.group(0);
-					if (REQUEST_ID_TAG.replace("\\d+", requestID).equals(idTag))
-						break;
+				String resultJSon;
+				try {
+					resultJSon = mqRequest.parseResponse(reply);
+				} catch (Throwable t) {
+					callback.onFailure(t);
+					return;
 				}
+				callback.onResult(resultJSon);
 			}
+			@Override
+			public void onFailure(Throwable t) {
+				callback.onFailure(t);
+			}
+		});
+		
+		if (requestId != null && callback instanceof ProgressCallback) {
+			final MQReplyDispatcher dispatcher = dispatcherH.get(mqRequest.getComponentKey());
+			((ProgressCallback) callback).onSent(new Runnable() {
+				@Override
+				public void run() {
+					dispatcher.unregister(requestId);
+				}
+			});
 		}
+	}
+	
+	/**
+	 * Processes the request asynchronously. The container thread is released as soon as the
+	 * request message is sent, the response is written from a callback thread once the reply
+	 * arrives.
+	 * 
+	 * @param request
+	 * @param response
+	 * @param mqRequest
+	 */
+	protected void processAsync(HttpServletRequest request, HttpServletResponse response, MQRequest mqRequest) {
+		AsyncContext asyncContext = request.startAsync(request, response);
+		long timeout = timeoutPolicy.getTimeout(mqRequest.getComponentKey(), mqRequest.getQueryType());
+		mqRequest.setDeadline(System.currentTimeMillis() + timeout);
+		asyncContext.setTimeout(timeout + ASYNC_TIMEOUT_MARGIN);
+		
+		AsyncResponder responder = new AsyncResponder(asyncContext, mqRequest);
+		asyncContext.addListener(responder);
 		
-		if (log.isDebugEnabled()) {
-			log.debug("Received response from the " + componentKey + " component!");
-			if (Configuration.LOG_EVENTS)
-				log.debug(responseMsg);
+		requestExecutor.execute(mqRequest, responder);
+	}
+	
+	/**
+	 * Runs a handler which blocks off the container thread, on a virtual thread if
+	 * <code>request.virtual.threads</code> is set, so the container threads are not held by
+	 * the calls to the web services.
+	 * 
+	 * @param request
+	 * @param response
+	 * @param handler
+	 */
+	protected void processBlocking(HttpServletRequest request, HttpServletResponse response, final BlockingHandler handler) {
+		final AsyncContext asyncContext = request.startAsync(request, response);
+		
+		handlerExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				HttpServletResponse asyncResponse = (HttpServletResponse) asyncContext.getResponse();
+				try {
+					handler.handle((HttpServletRequest) asyncContext.getRequest(), asyncResponse);
+				} catch (Throwable t) {
+					sendError(asyncResponse, t);
+				} finally {
+					asyncContext.complete();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Sends an error response. If the request was rejected because the component is unavailable
+	 * or overloaded, 503 is sent with a JSON body, so the UI can tell the user when to retry. If the request
+	 * message couldn't be built from the parameters 400 is sent, otherwise 500 is sent.
+	 * 
+	 * @param response
+	 * @param t
+	 */
+	@SuppressWarnings("unchecked")
+	protected void sendError(HttpServletResponse response, Throwable t) {
+		ComponentUnavailableException unavailable = null;
+		InvalidRequestException invalid = null;
+		for (Throwable cause = t; cause != null && unavailable == null && invalid == null; cause = cause.getCause()) {
+			if (cause instanceof ComponentUnavailableException)
+				unavailable = (ComponentUnavailableException) cause;
+			else if (cause instanceof InvalidRequestException)
+				invalid = (InvalidRequestException) cause;
 		}
 		
-		return responseMsg;
+		try {
+			if (invalid != null) {
+				log.warn(invalid.getMessage());
+				response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+				return;
+			}
+			if (unavailable == null) {
+				log.error("An unexpected exception occurred!", t);
+				response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+				return;
+			}
+			
+			if (log.isDebugEnabled())
+				log.debug(unavailable.getMessage() + " Rejecting request...");
+			
+			long retryAfterSec = (unavailable.getRetryAfter() + 999) / 1000;
+			
+			JSONObject errorJSon = new JSONObject();
+			errorJSon.put("type", "error");
+			errorJSon.put("error", unavailable instanceof ComponentOverloadedException ? "overloaded" : "unavailable");
+			errorJSon.put("component", unavailable.getComponentKey().toString());
+			errorJSon.put("retryAfter", retryAfterSec);
+			
+			response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			response.setHeader("Retry-After", String.valueOf(retryAfterSec));
+			writeJSon(errorJSon.toJSONString(), response);
+		} catch (IOException e) {
+			log.error("Failed to send the error response!", e);
+		}
 	}
 	
-	private String getMqResponse(String requestMsg, String requestId, ComponentKey componentKey) throws JMSException, ServletException {
-		sendMessage(requestMsg, componentKey);
-		return receiveMessage(requestId, componentKey);
+	/**
+	 * Processes several requests concurrently and writes their results as the sections of
+	 * one JSON object, e.g. <code>{"type": "search", "peopleData": {...}, ...}</code>. A section
+	 * whose request failed is null, the whole request only fails if all the sections failed.
+	 * 
+	 * @param request
+	 * @param response
+	 * @param type the type of the combined result
+	 * @param mqRequestH the requests by the name of their section
+	 */
+	protected void processAsync(HttpServletRequest request, HttpServletResponse response, String type, Map<String, MQRequest> mqRequestH) {
+		AsyncContext asyncContext = request.startAsync(request, response);
+		
+		long now = System.currentTimeMillis();
+		long timeout = 0;
+		for (MQRequest mqRequest : mqRequestH.values()) {
+			long requestTimeout = timeoutPolicy.getTimeout(mqRequest.getComponentKey(), mqRequest.getQueryType());
+			mqRequest.setDeadline(now + requestTimeout);
+			timeout = Math.max(timeout, requestTimeout);
+		}
+		asyncContext.setTimeout(timeout + ASYNC_TIMEOUT_MARGIN);
+		
+		AsyncResponder responder = new AsyncResponder(asyncContext, mqRequestH.values().iterator().next());
+		asyncContext.addListener(responder);
+		
+		CompositeResult result = new CompositeResult(type, mqRequestH.keySet(), responder);
+		for (Map.Entry<String, MQRequest> entry : mqRequestH.entrySet())
+			requestExecutor.execute(entry.getValue(), result.getSectionCallback(entry.getKey()));
+	}
+	
+	protected void writeJSon(String json, HttpServletResponse response) throws IOException {
+		response.setContentType("text/json");
+		PrintWriter writer = new PrintWriter(response.getOutputStream());
+		writer.write(json);
+		writer.flush();
+		writer.close();
 	}
 	
 	/**
-	 * Sends a message to the KEUI component and receives the response.
+	 * Collects the results of the sections and passes the combined JSON on, once all of
+	 * them are done.
 	 */
-	protected String getKEUIResponse(String requestMsg, String requestId) throws JMSException, ServletException {
-		return getMqResponse(requestMsg, requestId, ComponentKey.KEUI);
+	private static class CompositeResult {
+		
+		private final String type;
+		private final List<String> sections;
+		private final ResultCallback callback;
+		private final Map<String, String> resultH = new ConcurrentHashMap<>();
+		private final AtomicInteger remaining;
+		private volatile Throwable failure;
+		
+		CompositeResult(String type, Collection<String> sections, ResultCallback callback) {
+			this.type = type;
+			this.sections = new ArrayList<>(sections);
+			this.callback = callback;
+			this.remaining = new AtomicInteger(sections.size());
+		}
+		
+		ResultCallback getSectionCallback(final String section) {
+			return new ResultCallback() {
+				@Override
+				public void onResult(String resultJSon) {
+					resultH.put(section, resultJSon);
+					sectionDone();
+				}
+				@Override
+				public void onFailure(Throwable t) {
+					log.warn("Failed to fetch section " + section + ": " + t.getMessage());
+					failure = t;
+					sectionDone();
+				}
+			};
+		}
+		
+		private void sectionDone() {
+			if (remaining.decrementAndGet() > 0) return;
+			
+			if (resultH.isEmpty()) {
+				callback.onFailure(failure);
+				return;
+			}
+			
+			Map<String, String> orderedH = new LinkedHashMap<>();
+			for (String section : sections)
+				orderedH.put(section, resultH.get(section));
+			
+			callback.onResult(toCompositeJSon(type, orderedH));
+		}
 	}
 	
 	/**
-	 * Sends a message to the API component and receives the response.
+	 * Combines the JSON results into one object, e.g. <code>{"type": "search", "peopleData": {...}, ...}</code>.
+	 * The results are already serialized, so they are not parsed again.
+	 * 
+	 * @param type
+	 * @param resultH the results by their section, a null result is written as null
+	 * @return
 	 */
-	protected String getAPIResponse(String requestMsg, String requestId) throws JMSException, ServletException {
-		return getMqResponse(requestMsg, requestId, ComponentKey.API);
+	protected static String toCompositeJSon(String type, Map<String, String> resultH) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"type\":\"").append(JSONValue.escape(type)).append('"');
+		for (Map.Entry<String, String> entry : resultH.entrySet()) {
+			json.append(",\"").append(JSONValue.escape(entry.getKey())).append("\":");
+			json.append(entry.getValue() != null ? entry.getValue() : "null");
+		}
+		json.append('}');
+		return json.toString();
 	}
 	
-	/*
-	 * (non-Javadoc)
-	 * @see javax.servlet.GenericServlet#destroy()
+	/**
+	 * Writes the result to the client and completes the async request. Whatever happens
+	 * first, the result, a failure or the container timeout, completes the request.
 	 */
-	@Override
-	public void destroy() {
-		if (log.isDebugEnabled()) log.debug("Destroying a servlet, closing ActiveMQ consumers and producers...");
-		try {
-			// clean up
-			for (ComponentKey key : producerH.keySet()) {
-				producerH.get(key).close();
-				consumerH.get(key).close();
+	private class AsyncResponder implements ResultCallback, AsyncListener {
+		
+		private final AsyncContext asyncContext;
+		private final MQRequest mqRequest;
+		private final AtomicBoolean done = new AtomicBoolean(false);
+		
+		AsyncResponder(AsyncContext asyncContext, MQRequest mqRequest) {
+			this.asyncContext = asyncContext;
+			this.mqRequest = mqRequest;
+		}
+
+		@Override
+		public void onResult(String resultJSon) {
+			if (!done.compareAndSet(false, true)) return;
+			
+			HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+			try {
+				writeJSon(resultJSon, response);
+			} catch (Throwable t) {
+				sendError(response, t);
+			} finally {
+				asyncContext.complete();
 			}
+		}
+
+		@Override
+		public void onFailure(Throwable t) {
+			if (!done.compareAndSet(false, true)) return;
 			
-		} catch (JMSException e) {
-			log.error(e.getMessage(), e);
+			sendError((HttpServletResponse) asyncContext.getResponse(), t);
+			asyncContext.complete();
 		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) throws IOException {
+			onFailure(new TimeoutException(mqRequest.getComponentKey() + " timed out!"));
+		}
+
+		@Override
+		public void onError(AsyncEvent event) throws IOException {
+			onFailure(event.getThrowable());
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) throws IOException {}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) throws IOException {}
 	}
 	
 	/*
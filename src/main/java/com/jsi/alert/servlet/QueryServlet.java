@@ -1,8 +1,8 @@
 package com.jsi.alert.servlet;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -18,6 +18,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.jsi.alert.model.UserPrincipal;
+import com.jsi.alert.mq.MQReply;
+import com.jsi.alert.mq.MQRequest;
+import com.jsi.alert.mq.MQSessionProvider.ComponentKey;
 import com.jsi.alert.service.AuthenticatorService;
 import com.jsi.alert.utils.Configuration;
 import com.jsi.alert.utils.MessageParser;
@@ -34,6 +37,7 @@ public class QueryServlet extends MQServlet {
 		KEYWORD("keywordData"),
 		TIMELINE("timelineData"),
 		ITEM("itemData"),
+		SEARCH("search"),
 		ISSUE_DETAILS("issueDetails"),
 		COMMIT_DETAILS("commitDetails"),
 		ITEM_DETAILS("itemDetails"),
@@ -92,6 +96,8 @@ public class QueryServlet extends MQServlet {
 				processTimelineRq(request, response);
 			else if (QueryType.ITEM.value.equals(type))
 				processItemsRq(request, response);
+			else if (QueryType.SEARCH.value.equals(type))
+				processSearchRq(request, response);
 			else if (QueryType.ISSUE_DETAILS.value.equals(type))
 				processIssueDetailsRq(request, response);
 			else if (QueryType.COMMIT_DETAILS.value.equals(type))
@@ -100,15 +106,21 @@ public class QueryServlet extends MQServlet {
 				processItemDetailsRq(request, response);
 			else if (QueryType.DUPLICATE_ISSUE.value.equals(type))
 				processDuplicateIssueRq(request, response);
-			else if (QueryType.SUGGEST_MY_CODE.value.equals(type))
-				processRelatedMyCodeRq(request, response);
+			else if (QueryType.SUGGEST_MY_CODE.value.equals(type)) {
+				// authenticating the user calls the web service
+				processBlocking(request, response, new BlockingHandler() {
+					@Override
+					public void handle(HttpServletRequest request, HttpServletResponse response) throws Exception {
+						processRelatedMyCodeRq(request, response);
+					}
+				});
+			}
 			else if (QueryType.SUGGEST_FOR_PEOPLE.value.equals(type))
 				processSuggestForPeopleRq(request, response);
 			else
 				throw new IllegalArgumentException("An unexpected query type: " + type + "!");
 		} catch (Throwable ex) {
-			log.error("An unexpected exception occurred!", ex);
-			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			sendError(response, ex);
 		}
 	}
 	
@@ -125,61 +137,131 @@ public class QueryServlet extends MQServlet {
 		return props;
 	}
 
-	private void processPeopleRq(HttpServletRequest request, HttpServletResponse response) throws Exception {
-		Properties props = createRequestProps(request);
-		
-		final String requestId = Utils.genRequestID();
-		String requestMsg = MessageUtils.genKEUIPeopleMessage(props, requestId);
-		String responseMsg = getKEUIResponse(requestMsg, requestId);
-		String resultJSon = MessageParser.parseKEUIPeopleResponse(responseMsg);
-		
-		writeJSon(resultJSon, response);
+	private void processPeopleRq(HttpServletRequest request, HttpServletResponse response) {
+		processAsync(request, response, createPeopleRequest(createRequestProps(request)));
 	}
 	
-	private void processKeywordRq(HttpServletRequest request, HttpServletResponse response)  throws Exception {
-		Properties props = createRequestProps(request);
-		
-		final String requestId = Utils.genRequestID();
-		String requestMsg = MessageUtils.genKEUIKeywordMessage(props, requestId);
-		String responseMsg = getKEUIResponse(requestMsg, requestId);
-		String resultJSon = MessageParser.parseKEUIKeywordsResponse(responseMsg);
-		
-		writeJSon(resultJSon, response);
+	private MQRequest createPeopleRequest(final Properties props) {
+		return new MQRequest(ComponentKey.KEUI, QueryType.PEOPLE.value, MQRequest.createKey(QueryType.PEOPLE.value, props)) {
+			@Override
+			public String createMessage(String requestId) {
+				return MessageUtils.genKEUIPeopleMessage(props, requestId);
+			}
+			@Override
+			public String parseResponse(MQReply reply) throws IOException {
+				return MessageParser.parseKEUIPeopleResponse(reply.getInputStream());
+			}
+		};
+	}
+	
+	private void processKeywordRq(HttpServletRequest request, HttpServletResponse response) {
+		processAsync(request, response, createKeywordRequest(createRequestProps(request)));
+	}
+	
+	private MQRequest createKeywordRequest(final Properties props) {
+		return new MQRequest(ComponentKey.KEUI, QueryType.KEYWORD.value, MQRequest.createKey(QueryType.KEYWORD.value, props)) {
+			@Override
+			public String createMessage(String requestId) {
+				return MessageUtils.genKEUIKeywordMessage(props, requestId);
+			}
+			@Override
+			public String parseResponse(MQReply reply) throws IOException {
+				return MessageParser.parseKEUIKeywordsResponse(reply.getInputStream());
+			}
+		};
 	}
 
-	private void processTimelineRq(HttpServletRequest request, HttpServletResponse response)  throws Exception {
-		Properties props = createRequestProps(request);
-		
-		final String requestId = Utils.genRequestID();
-		String requestMsg = MessageUtils.genKEUITimelineMessage(props, requestId);
-		String responseMsg = getKEUIResponse(requestMsg, requestId);
-		String resultJSon = MessageParser.parseKEUITimelineResponse(responseMsg);
-		
-		writeJSon(resultJSon, response);
+	private void processTimelineRq(HttpServletRequest request, HttpServletResponse response) {
+		processAsync(request, response, createTimelineRequest(createRequestProps(request)));
+	}
+	
+	private MQRequest createTimelineRequest(final Properties props) {
+		return new MQRequest(ComponentKey.KEUI, QueryType.TIMELINE.value, MQRequest.createKey(QueryType.TIMELINE.value, props)) {
+			@Override
+			public String createMessage(String requestId) {
+				return MessageUtils.genKEUITimelineMessage(props, requestId);
+			}
+			@Override
+			public String parseResponse(MQReply reply) throws IOException {
+				return MessageParser.parseKEUITimelineResponse(reply.getInputStream());
+			}
+		};
 	}
 
 	
-	private void processItemsRq(HttpServletRequest request, HttpServletResponse response)  throws Exception {
+	private void processItemsRq(HttpServletRequest request, HttpServletResponse response) {
+		processAsync(request, response, createItemsRequest(createRequestProps(request)));
+	}
+	
+	private MQRequest createItemsRequest(final Properties props) {
+		return new MQRequest(ComponentKey.KEUI, QueryType.ITEM.value, MQRequest.createKey(QueryType.ITEM.value, props)) {
+			@Override
+			public String createMessage(String requestId) {
+				return MessageUtils.getKEUIItemsMessage(props, requestId);
+			}
+			@Override
+			public String parseResponse(MQReply reply) throws IOException {
+				return MessageParser.parseKEUIItemsResponse(reply.getInputStream());
+			}
+		};
+	}
+	
+	/**
+	 * Processes a general search, the people, keyword, timeline and item queries are sent
+	 * concurrently and their results are returned as the sections of one JSON object. If
+	 * KEUI supports it, the queries are sent as one batch.
+	 */
+	private void processSearchRq(HttpServletRequest request, HttpServletResponse response) {
 		Properties props = createRequestProps(request);
 		
-		final String requestId = Utils.genRequestID();
-		String requestMsg = MessageUtils.getKEUIItemsMessage(props, requestId);
-		String responseMsg = getKEUIResponse(requestMsg, requestId);
-		String resultJSon = MessageParser.parseKEUIItemsResponse(responseMsg);
+		// the items are not filtered by issues
+		Properties itemProps = new Properties();
+		itemProps.putAll(props);
+		itemProps.remove("issues");
+		
+		if (Configuration.KEUI_BATCH_QUERIES) {
+			final Map<String, Properties> sectionPropsH = new LinkedHashMap<>();
+			sectionPropsH.put(QueryType.PEOPLE.value, props);
+			sectionPropsH.put(QueryType.KEYWORD.value, props);
+			sectionPropsH.put(QueryType.TIMELINE.value, props);
+			sectionPropsH.put(QueryType.ITEM.value, itemProps);
+			
+			processAsync(request, response, new MQRequest(ComponentKey.KEUI, QueryType.SEARCH.value, MQRequest.createKey(QueryType.SEARCH.value, props)) {
+				@Override
+				public String createMessage(String requestId) {
+					return MessageUtils.genKEUIBatchMessage(sectionPropsH, requestId);
+				}
+				@Override
+				public String parseResponse(MQReply reply) throws IOException {
+					return toCompositeJSon(QueryType.SEARCH.value, MessageParser.parseKEUIBatchResponse(reply.getInputStream()));
+				}
+			});
+			return;
+		}
+		
+		Map<String, MQRequest> mqRequestH = new LinkedHashMap<>();
+		mqRequestH.put(QueryType.PEOPLE.value, createPeopleRequest(props));
+		mqRequestH.put(QueryType.KEYWORD.value, createKeywordRequest(props));
+		mqRequestH.put(QueryType.TIMELINE.value, createTimelineRequest(props));
+		mqRequestH.put(QueryType.ITEM.value, createItemsRequest(itemProps));
 		
-		writeJSon(resultJSon, response);
+		processAsync(request, response, QueryType.SEARCH.value, mqRequestH);
 	}
 	
-	private void processIssueDetailsRq(HttpServletRequest request, HttpServletResponse response) throws Exception {
+	private void processIssueDetailsRq(HttpServletRequest request, HttpServletResponse response) {
 		// check if the ID is a number
-		String itemId = request.getParameter(QUERY_PARAM);
-		String requestId = Utils.genRequestID();
+		final String itemId = request.getParameter(QUERY_PARAM);
 		
-		String requestMsg = MessageUtils.genIssueDetailsMsg(itemId, requestId);
-		String responseMsg = getAPIResponse(requestMsg, requestId);
-		
-		String resultJSon = MessageParser.parseAPIIssueDetailsMsg(responseMsg);
-		writeJSon(resultJSon, response);
+		processAsync(request, response, new MQRequest(ComponentKey.API, QueryType.ISSUE_DETAILS.value, MQRequest.createKey(QueryType.ISSUE_DETAILS.value, itemId)) {
+			@Override
+			public String createMessage(String requestId) throws Exception {
+				return MessageUtils.genIssueDetailsMsg(itemId, requestId);
+			}
+			@Override
+			public String parseResponse(MQReply reply) throws Exception {
+				return MessageParser.parseAPIIssueDetailsMsg(reply.getText());
+			}
+		});
 	}
 	
 	/**
@@ -187,17 +269,20 @@ public class QueryServlet extends MQServlet {
 	 * 
 	 * @param request
 	 * @param response
-	 * @throws Exception
 	 */
-	private void processCommitDetailsRq(HttpServletRequest request, HttpServletResponse response) throws Exception {
-		String itemId = request.getParameter(QUERY_PARAM);
-		String requestId = Utils.genRequestID();
-
-		String requestMsg = MessageUtils.getCommitDetailsMsg(itemId, requestId);
-		String responseMsg = getAPIResponse(requestMsg, requestId);
+	private void processCommitDetailsRq(HttpServletRequest request, HttpServletResponse response) {
+		final String itemId = request.getParameter(QUERY_PARAM);
 		
-		String resultJSon = MessageParser.parseAPICommitDetailsMessage(responseMsg);
-		writeJSon(resultJSon, response);
+		processAsync(request, response, new MQRequest(ComponentKey.API, QueryType.COMMIT_DETAILS.value, MQRequest.createKey(QueryType.COMMIT_DETAILS.value, itemId)) {
+			@Override
+			public String createMessage(String requestId) throws Exception {
+				return MessageUtils.getCommitDetailsMsg(itemId, requestId);
+			}
+			@Override
+			public String parseResponse(MQReply reply) throws IOException {
+				return MessageParser.parseAPICommitDetailsMessage(reply.getText());
+			}
+		});
 	}
 	
 	/**
@@ -205,16 +290,20 @@ public class QueryServlet extends MQServlet {
 	 * 
 	 * @param request
 	 * @param response
-	 * @throws Exception
 	 */
-	private void processItemDetailsRq(HttpServletRequest request, HttpServletResponse response) throws Exception {
-		String itemId = request.getParameter(QUERY_PARAM);
-		String requestId = Utils.genRequestID();
-		String requestMsg = MessageUtils.genKEUIItemDetailsMessage(itemId, requestId);
+	private void processItemDetailsRq(HttpServletRequest request, HttpServletResponse response) {
+		final String itemId = request.getParameter(QUERY_PARAM);
 		
-		String responseMsg = getKEUIResponse(requestMsg, requestId);
-		String resultJSon = MessageParser.parseKEUIItemDetailsMsg(responseMsg);
-		writeJSon(resultJSon, response);
+		processAsync(request, response, new MQRequest(ComponentKey.KEUI, QueryType.ITEM_DETAILS.value, MQRequest.createKey(QueryType.ITEM_DETAILS.value, itemId)) {
+			@Override
+			public String createMessage(String requestId) {
+				return MessageUtils.genKEUIItemDetailsMessage(itemId, requestId);
+			}
+			@Override
+			public String parseResponse(MQReply reply) throws IOException {
+				return MessageParser.parseKEUIItemDetailsMsg(reply.getText());
+			}
+		});
 	}
 	
 	/**
@@ -222,18 +311,20 @@ public class QueryServlet extends MQServlet {
 	 * 
 	 * @param request
 	 * @param response
-	 * @throws Exception
 	 */
-	private void processDuplicateIssueRq(HttpServletRequest request, HttpServletResponse response) throws Exception {
-		Properties props = createRequestProps(request);
-		
-		String requestId = Utils.genRequestID();
-		String requestMsg = MessageUtils.genKEUIDuplicateIssueMsg(props, requestId);
+	private void processDuplicateIssueRq(HttpServletRequest request, HttpServletResponse response) {
+		final Properties props = createRequestProps(request);
 		
-		String responseMsg = getKEUIResponse(requestMsg, requestId);
-		String resultJSon = MessageParser.parseKEUIDuplicateResponse(responseMsg);
-		
-		writeJSon(resultJSon, response);
+		processAsync(request, response, new MQRequest(ComponentKey.KEUI, QueryType.DUPLICATE_ISSUE.value, MQRequest.createKey(QueryType.DUPLICATE_ISSUE.value, props)) {
+			@Override
+			public String createMessage(String requestId) {
+				return MessageUtils.genKEUIDuplicateIssueMsg(props, requestId);
+			}
+			@Override
+			public String parseResponse(MQReply reply) throws IOException {
+				return MessageParser.parseKEUIDuplicateResponse(reply.getText());
+			}
+		});
 	}
 	
 	/**
@@ -266,7 +357,7 @@ public class QueryServlet extends MQServlet {
 			// now that I have the issueIDs I have to send them to the KEUI component
 			requestId = Utils.genRequestID();
 			String keuiRq = MessageUtils.genKEUIIssueListMsg(issueIds, requestId);
-			String keuiResp = "";	//getKEUIResponse(keuiRq, requestId);	TODO
+			String keuiResp = "";	// TODO send keuiRq to KEUI through processAsync
 			
 			String resultJSon = MessageParser.parseKEUIItemsResponse(keuiResp);
 			writeJSon(resultJSon, response);
@@ -287,15 +378,6 @@ public class QueryServlet extends MQServlet {
 
 	
 	
-	private void writeJSon(String json, HttpServletResponse response) throws IOException {
-		response.setContentType("text/json");
-		PrintWriter writer = new PrintWriter(response.getOutputStream());
-		writer.write(json);
-		writer.flush();
-		writer.close();
-	}
-	
-	
 	// TODO remove me
 	private String getRecommenderIssuesResponse(String requestMsg, String requestId) {
 		return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><soap:Envelope xmlns:soap=\"http://www.w3.org/2003/05/soap-envelope\" xmlns:wsnt=\"http://docs.oasis-open.org/wsn/b-2\" xmlns:wsa=\"http://www.w3.org/2005/08/addressing\"><soap:Header>Header</soap:Header><soap:Body><wsnt:Notify><wsnt:NotificationMessage><wsnt:Topic>ALERT.Recommender.IssueRecommendation</wsnt:Topic><wsnt:ProducerReference><wsa:Address>http://www.alert-project.eu/socrates</wsa:Address></wsnt:ProducerReference><wsnt:Message><ns1:event xmlns:ns1=\"http://www.alert-project.eu/\" xmlns:o=\"http://www.alert-project.eu/ontoevents-mdservice\" xmlns:r=\"http://www.alert-project.eu/rawevents-forum\" xmlns:r1=\"http://www.alert-project.eu/rawevents-mailinglist\" xmlns:r2=\"http://www.alert-project.eu/rawevents-wiki\" xmlns:s=\"http://www.alert-project.eu/strevents-kesi\" xmlns:sm=\"http://www.alert-project.eu/stardom\" xmlns:s1=\"http://www.alert-project.eu/strevents-keui\" xmlns:sc=\"http://www.alert-project.eu/socrates\" xmlns:p=\"http://www.alert-project.eu/panteon\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xsi:schemaLocation=\"http://www.alert-project.eu/alert-root.xsd\" ><ns1:head><ns1:sender>SOCRATES</ns1:sender><ns1:timestamp>1331676396932</ns1:timestamp><ns1:sequencenumber>570749432</ns1:sequencenumber></ns1:head><ns1:payload><ns1:meta><ns1:startTime>1331676396932</ns1:startTime><ns1:endTime>1331676396937</ns1:endTime><ns1:eventName>ALERT.Recommender.IssueRecommendation</ns1:eventName><ns1:eventId>1818516212</ns1:eventId><ns1:eventType>Reply</ns1:eventType></ns1:meta><ns1:eventData><sc:issues><sc:issue><sc:id>1010</sc:id><o:bug>owl#1</o:bug></sc:issue><sc:issue><sc:id>2050</sc:id><o:bug>owl#2</o:bug></sc:issue><sc:issue><sc:id>2030</sc:id><o:bug>owl#3</o:bug></sc:issue><sc:issue><sc:id>2040</sc:id><o:bug>owl#4</o:bug></sc:issue></sc:issues></ns1:eventData></ns1:payload></ns1:event></wsnt:Message></wsnt:NotificationMessage></wsnt:Notify></soap:Body></soap:Envelope>";
@@ -1,7 +1,6 @@
 package com.jsi.alert.servlet;
 
 import java.io.IOException;
-import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
@@ -16,9 +15,12 @@ import javax.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.jsi.alert.cache.SuggestionCache;
+import com.jsi.alert.mq.MQReply;
+import com.jsi.alert.mq.MQRequest;
+import com.jsi.alert.mq.MQSessionProvider.ComponentKey;
 import com.jsi.alert.utils.MessageParser;
 import com.jsi.alert.utils.MessageUtils;
-import com.jsi.alert.utils.Utils;
 
 /**
  * A <code>Servlet</code> which handles suggestion requests.
@@ -29,6 +31,8 @@ public class SuggestServlet extends MQServlet {
 	
 	private static final Logger log = LoggerFactory.getLogger(SuggestServlet.class);
 	
+	private static final String QUERY_TYPE = "suggest";
+	
 	private static Set<String> availableTypes = new HashSet<String>(Arrays.asList(new String[] {"Other", "People", "Issues"}));
 	
 
@@ -66,22 +70,32 @@ public class SuggestServlet extends MQServlet {
 				throw new IllegalArgumentException("Searching for suggestions for unknown type!!");
 			
 			// get the parameter
-			String currInput = request.getParameter(suggType);
+			final String currInput = request.getParameter(suggType);
+			final String suggestionTypes = "Other".equals(suggType) ? "People,Products,Sources,Issues" : suggType;
+	
+			// most keystrokes only narrow down suggestions which are already cached
+			final SuggestionCache suggestionCache = SuggestionCache.getInstance();
+			String cached = suggestionCache.get(suggestionTypes, currInput);
+			if (cached != null) {
+				writeJSon(cached, response);
+				return;
+			}
 	
 			// send the message
-			String requestId = Utils.genRequestID();
-			
-			String requestMsg = MessageUtils.genKEUISuggestionMessage(currInput, "Other".equals(suggType) ? "People,Products,Sources,Issues" : suggType, requestId);
-			String responseMsg = getKEUIResponse(requestMsg, requestId);
-			String responseJSon = MessageParser.parseKEUISuggestMessage(responseMsg);
-			
-			PrintWriter writer = new PrintWriter(response.getOutputStream());
-			writer.write(responseJSon);
-			writer.flush();
-			writer.close();
+			processAsync(request, response, new MQRequest(ComponentKey.KEUI, QUERY_TYPE, MQRequest.createKey(QUERY_TYPE + ":" + suggestionTypes, currInput)) {
+				@Override
+				public String createMessage(String requestId) {
+					return MessageUtils.genKEUISuggestionMessage(currInput, suggestionTypes, requestId);
+				}
+				@Override
+				public String parseResponse(MQReply reply) throws IOException {
+					String suggestionsJSon = MessageParser.parseKEUISuggestMessage(reply.getText());
+					suggestionCache.put(suggestionTypes, currInput, suggestionsJSon);
+					return suggestionsJSon;
+				}
+			});
 		} catch (Throwable t) {
-			log.error("An unexpected exception occurred!", t);
-			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			sendError(response, t);
 		}
 	}
 }
@@ -1,7 +1,13 @@
 package com.jsi.alert.utils;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,16 +18,77 @@ public class Configuration {
 	
 	public static final String USER_PRINCIPAL = "user";
 	
+	private static final String TIMEOUT_OVERRIDE_PREFIX = "request.timeout.override.";
+	private static final String CACHE_TTL_PREFIX = "cache.ttl.";
+	private static final String DETAILS_CACHE_TTL_PREFIX = "details.cache.ttl.";
+	
 	public static String ACTIVEMQ_URL;
+	public static int MQ_POOL_CONNECTIONS, MQ_POOL_SESSIONS;
+	public static String NODE_ID;
+	public static boolean MQ_REPLY_SELECTOR;
+	public static String MQ_REPLY_TRANSPORT;
+	public static boolean MQ_REPLY_TOPIC_FALLBACK;
+	public static long MQ_RECONNECT_DELAY, MQ_RECONNECT_MAX_DELAY;
+	public static String MQ_REQUEST_ENCODING, MQ_ACCEPT_ENCODING;
+	public static Set<String> MQ_PERSISTENT_COMPONENTS, MQ_EXPIRING_COMPONENTS;
+	public static boolean MQ_ASYNC_SEND;
+	public static boolean MQ_EMBEDDED;
+	public static String MQ_EMBEDDED_NAME, MQ_EMBEDDED_NETWORK, MQ_EMBEDDED_CONNECTOR;
+	public static boolean KEUI_BATCH_QUERIES;
 	public static String KEUI_REQUEST_TOPIC, KEUI_RESPONSE_TOPIC;
 	public static String API_REQUEST_TOPIC, API_RESPONSE_TOPIC;
 	
 	public static boolean LOG_EVENTS;
 	
 	public static String LOGIN_URL, LOGOUT_URL, AUTHENTICATE_URL;
+	public static long AUTH_CACHE_TTL;
+	public static double AUTH_CACHE_REFRESH;
 	public static String NOTIFICATION_URL, NOTIFICATION_PARAMETER, NOTIFICATION_DEFAULT_USER;
+	public static long NOTIFICATION_REFRESH_MIN, NOTIFICATION_REFRESH_MAX, NOTIFICATION_REFRESH_TICK, NOTIFICATION_IDLE_TIMEOUT;
+	public static int NOTIFICATION_REFRESH_THREADS;
 	
 	public static long REQUEST_TIMEOUT;
+	public static boolean TIMEOUT_ADAPTIVE;
+	public static long TIMEOUT_MIN, TIMEOUT_MAX;
+	public static double TIMEOUT_MULTIPLIER;
+	public static Map<String, Long> TIMEOUT_OVERRIDES;
+	public static int CALLBACK_THREADS, HANDLER_THREADS;
+	public static boolean VIRTUAL_THREADS;
+	
+	public static boolean CIRCUIT_ENABLED;
+	public static int CIRCUIT_WINDOW, CIRCUIT_MIN_REQUESTS, CIRCUIT_PROBES;
+	public static double CIRCUIT_FAILURE_RATE;
+	public static long CIRCUIT_OPEN_TIME;
+	
+	public static boolean LIMIT_ENABLED;
+	public static int LIMIT_INITIAL, LIMIT_MIN, LIMIT_MAX, LIMIT_QUEUE_SIZE;
+	public static double LIMIT_RTT_TOLERANCE, LIMIT_BACKOFF;
+	public static long LIMIT_QUEUE_TIMEOUT;
+	
+	public static Set<String> LANE_INTERACTIVE_TYPES, LANE_BULK_TYPES;
+	public static int LANE_INTERACTIVE_MAX, LANE_NORMAL_MAX, LANE_BULK_MAX, LANE_QUEUE_SIZE;
+	public static long LANE_QUEUE_TIMEOUT;
+	
+	public static boolean HEDGE_ENABLED;
+	public static Set<String> HEDGE_TYPES;
+	public static double HEDGE_PERCENTILE, HEDGE_MAX_RATE;
+	public static long HEDGE_MIN_DELAY;
+	
+	public static boolean CACHE_ENABLED;
+	public static long CACHE_MAX_BYTES;
+	public static Map<String, Long> CACHE_TTLS;
+	
+	public static boolean DETAILS_CACHE_ENABLED, DETAILS_CACHE_COMPRESS;
+	public static long DETAILS_CACHE_MAX_BYTES;
+	public static Map<String, Long> DETAILS_CACHE_TTLS;
+	
+	public static boolean SUGGEST_CACHE_ENABLED;
+	public static long SUGGEST_CACHE_TTL;
+	public static int SUGGEST_CACHE_MAX_PREFIXES;
+	
+	public static List<String> KEUI_REQUEST_INSTANCES;
+	public static int ROUTING_VIRTUAL_NODES, ROUTING_FAILURE_THRESHOLD;
+	public static long ROUTING_DOWN_TIME;
 
 	static {
 		// read the properties
@@ -32,8 +99,27 @@ public class Configuration {
 			props.load(Configuration.class.getClassLoader().getResourceAsStream("alert.properties"));
 
 			ACTIVEMQ_URL = props.getProperty("activemq.url");
+			MQ_POOL_CONNECTIONS = props.containsKey("activemq.pool.connections") ? Integer.parseInt(props.getProperty("activemq.pool.connections")) : 1;
+			MQ_POOL_SESSIONS = props.containsKey("activemq.pool.sessions") ? Integer.parseInt(props.getProperty("activemq.pool.sessions")) : 8;
+			NODE_ID = props.containsKey("activemq.node.id") && !props.getProperty("activemq.node.id").trim().isEmpty() ? Utils.toNodeID(props.getProperty("activemq.node.id")) : Utils.genNodeID();
+			MQ_REPLY_SELECTOR = Boolean.parseBoolean(props.getProperty("activemq.reply.selector"));
+			MQ_REPLY_TRANSPORT = props.containsKey("activemq.reply.transport") ? props.getProperty("activemq.reply.transport") : "topic";
+			MQ_REPLY_TOPIC_FALLBACK = props.containsKey("activemq.reply.topic.fallback") ? Boolean.parseBoolean(props.getProperty("activemq.reply.topic.fallback")) : true;
+			MQ_RECONNECT_DELAY = props.containsKey("activemq.reconnect.delay") ? Long.parseLong(props.getProperty("activemq.reconnect.delay")) : 1000;
+			MQ_RECONNECT_MAX_DELAY = props.containsKey("activemq.reconnect.max.delay") ? Long.parseLong(props.getProperty("activemq.reconnect.max.delay")) : 30000;
+			MQ_REQUEST_ENCODING = props.containsKey("activemq.request.encoding") ? props.getProperty("activemq.request.encoding") : "text";
+			MQ_ACCEPT_ENCODING = props.containsKey("activemq.accept.encoding") ? props.getProperty("activemq.accept.encoding") : null;
+			MQ_PERSISTENT_COMPONENTS = parseSet(props.containsKey("activemq.delivery.persistent") ? props.getProperty("activemq.delivery.persistent") : "");
+			MQ_EXPIRING_COMPONENTS = parseSet(props.containsKey("activemq.delivery.expire") ? props.getProperty("activemq.delivery.expire") : "");
+			MQ_ASYNC_SEND = props.containsKey("activemq.async.send") ? Boolean.parseBoolean(props.getProperty("activemq.async.send")) : false;
+			MQ_EMBEDDED = props.containsKey("activemq.embedded") ? Boolean.parseBoolean(props.getProperty("activemq.embedded")) : false;
+			MQ_EMBEDDED_NAME = props.containsKey("activemq.embedded.name") ? props.getProperty("activemq.embedded.name") : "alertui";
+			MQ_EMBEDDED_NETWORK = props.containsKey("activemq.embedded.network") ? props.getProperty("activemq.embedded.network").trim() : "";
+			MQ_EMBEDDED_CONNECTOR = props.containsKey("activemq.embedded.connector") ? props.getProperty("activemq.embedded.connector").trim() : "";
+			KEUI_BATCH_QUERIES = Boolean.parseBoolean(props.getProperty("keui.batch.queries"));
 			KEUI_REQUEST_TOPIC = props.getProperty("topic.keui.request");
 			KEUI_RESPONSE_TOPIC = props.getProperty("topic.keui.response");
+			KEUI_REQUEST_INSTANCES = parseList(props.containsKey("topic.keui.request.instances") ? props.getProperty("topic.keui.request.instances") : "");
 			API_REQUEST_TOPIC = props.getProperty("topic.api.request");
 			API_RESPONSE_TOPIC = props.getProperty("topic.api.response");
 			
@@ -41,16 +127,116 @@ public class Configuration {
 			
 			LOGIN_URL = props.getProperty("login.form.url");
 			LOGOUT_URL = props.getProperty("logout.form.url");
+			AUTH_CACHE_TTL = props.containsKey("login.authenticate.cache.ttl") ? Long.parseLong(props.getProperty("login.authenticate.cache.ttl")) : 60000;
+			AUTH_CACHE_REFRESH = props.containsKey("login.authenticate.cache.refresh") ? Double.parseDouble(props.getProperty("login.authenticate.cache.refresh")) : 0.75;
 			AUTHENTICATE_URL = props.getProperty("login.authenticate.url");
 			
 			NOTIFICATION_URL = props.getProperty("notifications.url");
 			NOTIFICATION_PARAMETER = props.getProperty("notifications.param");
 			NOTIFICATION_DEFAULT_USER = props.containsKey("notifications.param.value") ? props.getProperty("notifications.param.value") : null;
+			NOTIFICATION_REFRESH_MIN = props.containsKey("notifications.refresh.min") ? Long.parseLong(props.getProperty("notifications.refresh.min")) : 30000;
+			NOTIFICATION_REFRESH_MAX = props.containsKey("notifications.refresh.max") ? Long.parseLong(props.getProperty("notifications.refresh.max")) : 600000;
+			NOTIFICATION_REFRESH_TICK = props.containsKey("notifications.refresh.tick") ? Long.parseLong(props.getProperty("notifications.refresh.tick")) : 5000;
+			NOTIFICATION_IDLE_TIMEOUT = props.containsKey("notifications.idle.timeout") ? Long.parseLong(props.getProperty("notifications.idle.timeout")) : 1800000;
+			NOTIFICATION_REFRESH_THREADS = props.containsKey("notifications.refresh.threads") ? Integer.parseInt(props.getProperty("notifications.refresh.threads")) : 2;
 		
 			REQUEST_TIMEOUT = props.containsKey("request.timeout") ? Long.parseLong((String) props.get("request.timeout")) : 10000;
+			TIMEOUT_ADAPTIVE = Boolean.parseBoolean(props.getProperty("request.timeout.adaptive"));
+			TIMEOUT_MIN = props.containsKey("request.timeout.min") ? Long.parseLong(props.getProperty("request.timeout.min")) : 1000;
+			TIMEOUT_MAX = props.containsKey("request.timeout.max") ? Long.parseLong(props.getProperty("request.timeout.max")) : 60000;
+			TIMEOUT_MULTIPLIER = props.containsKey("request.timeout.multiplier") ? Double.parseDouble(props.getProperty("request.timeout.multiplier")) : 2;
+			
+			TIMEOUT_OVERRIDES = new HashMap<>();
+			for (String name : props.stringPropertyNames()) {
+				if (name.startsWith(TIMEOUT_OVERRIDE_PREFIX))
+					TIMEOUT_OVERRIDES.put(name.substring(TIMEOUT_OVERRIDE_PREFIX.length()), Long.parseLong(props.getProperty(name)));
+			}
+			
+			CALLBACK_THREADS = props.containsKey("request.callback.threads") ? Integer.parseInt(props.getProperty("request.callback.threads")) : 4;
+			HANDLER_THREADS = props.containsKey("request.handler.threads") ? Integer.parseInt(props.getProperty("request.handler.threads")) : 20;
+			VIRTUAL_THREADS = props.containsKey("request.virtual.threads") ? Boolean.parseBoolean(props.getProperty("request.virtual.threads")) : false;
+			
+			CIRCUIT_ENABLED = props.containsKey("circuit.enabled") ? Boolean.parseBoolean(props.getProperty("circuit.enabled")) : true;
+			CIRCUIT_WINDOW = props.containsKey("circuit.window") ? Integer.parseInt(props.getProperty("circuit.window")) : 20;
+			CIRCUIT_MIN_REQUESTS = props.containsKey("circuit.min.requests") ? Integer.parseInt(props.getProperty("circuit.min.requests")) : 10;
+			CIRCUIT_FAILURE_RATE = props.containsKey("circuit.failure.rate") ? Double.parseDouble(props.getProperty("circuit.failure.rate")) : 0.5;
+			CIRCUIT_OPEN_TIME = props.containsKey("circuit.open.time") ? Long.parseLong(props.getProperty("circuit.open.time")) : 15000;
+			CIRCUIT_PROBES = props.containsKey("circuit.probes") ? Integer.parseInt(props.getProperty("circuit.probes")) : 1;
+			
+			LIMIT_ENABLED = props.containsKey("limit.enabled") ? Boolean.parseBoolean(props.getProperty("limit.enabled")) : true;
+			LIMIT_INITIAL = props.containsKey("limit.initial") ? Integer.parseInt(props.getProperty("limit.initial")) : 20;
+			LIMIT_MIN = props.containsKey("limit.min") ? Integer.parseInt(props.getProperty("limit.min")) : 2;
+			LIMIT_MAX = props.containsKey("limit.max") ? Integer.parseInt(props.getProperty("limit.max")) : 200;
+			LIMIT_RTT_TOLERANCE = props.containsKey("limit.rtt.tolerance") ? Double.parseDouble(props.getProperty("limit.rtt.tolerance")) : 3;
+			LIMIT_BACKOFF = props.containsKey("limit.backoff") ? Double.parseDouble(props.getProperty("limit.backoff")) : 0.9;
+			LIMIT_QUEUE_SIZE = props.containsKey("limit.queue.size") ? Integer.parseInt(props.getProperty("limit.queue.size")) : 50;
+			LIMIT_QUEUE_TIMEOUT = props.containsKey("limit.queue.timeout") ? Long.parseLong(props.getProperty("limit.queue.timeout")) : 500;
+			
+			LANE_INTERACTIVE_TYPES = parseSet(props.containsKey("lane.interactive.types") ? props.getProperty("lane.interactive.types") : "suggest,issueDetails,commitDetails,itemDetails");
+			LANE_BULK_TYPES = parseSet(props.containsKey("lane.bulk.types") ? props.getProperty("lane.bulk.types") : "timelineData,peopleData");
+			LANE_INTERACTIVE_MAX = props.containsKey("lane.interactive.max.requests") ? Integer.parseInt(props.getProperty("lane.interactive.max.requests")) : 0;
+			LANE_NORMAL_MAX = props.containsKey("lane.normal.max.requests") ? Integer.parseInt(props.getProperty("lane.normal.max.requests")) : 0;
+			LANE_BULK_MAX = props.containsKey("lane.bulk.max.requests") ? Integer.parseInt(props.getProperty("lane.bulk.max.requests")) : 5;
+			LANE_QUEUE_SIZE = props.containsKey("lane.queue.size") ? Integer.parseInt(props.getProperty("lane.queue.size")) : 100;
+			LANE_QUEUE_TIMEOUT = props.containsKey("lane.queue.timeout") ? Long.parseLong(props.getProperty("lane.queue.timeout")) : 1000;
+			
+			HEDGE_ENABLED = props.containsKey("hedge.enabled") ? Boolean.parseBoolean(props.getProperty("hedge.enabled")) : false;
+			HEDGE_TYPES = parseSet(props.containsKey("hedge.types") ? props.getProperty("hedge.types") : "issueDetails,commitDetails");
+			HEDGE_PERCENTILE = props.containsKey("hedge.percentile") ? Double.parseDouble(props.getProperty("hedge.percentile")) : 0.95;
+			HEDGE_MAX_RATE = props.containsKey("hedge.max.rate") ? Double.parseDouble(props.getProperty("hedge.max.rate")) : 0.05;
+			HEDGE_MIN_DELAY = props.containsKey("hedge.min.delay") ? Long.parseLong(props.getProperty("hedge.min.delay")) : 20;
+			
+			CACHE_ENABLED = props.containsKey("cache.enabled") ? Boolean.parseBoolean(props.getProperty("cache.enabled")) : true;
+			CACHE_MAX_BYTES = props.containsKey("cache.max.bytes") ? Long.parseLong(props.getProperty("cache.max.bytes")) : 64 * 1024 * 1024;
+			CACHE_TTLS = new HashMap<>();
+			for (String name : props.stringPropertyNames()) {
+				if (name.startsWith(CACHE_TTL_PREFIX))
+					CACHE_TTLS.put(name.substring(CACHE_TTL_PREFIX.length()), Long.parseLong(props.getProperty(name)));
+			}
+			
+			DETAILS_CACHE_ENABLED = props.containsKey("details.cache.enabled") ? Boolean.parseBoolean(props.getProperty("details.cache.enabled")) : true;
+			DETAILS_CACHE_COMPRESS = props.containsKey("details.cache.compress") ? Boolean.parseBoolean(props.getProperty("details.cache.compress")) : true;
+			DETAILS_CACHE_MAX_BYTES = props.containsKey("details.cache.max.bytes") ? Long.parseLong(props.getProperty("details.cache.max.bytes")) : 32 * 1024 * 1024;
+			DETAILS_CACHE_TTLS = new HashMap<>();
+			for (String name : props.stringPropertyNames()) {
+				if (name.startsWith(DETAILS_CACHE_TTL_PREFIX))
+					DETAILS_CACHE_TTLS.put(name.substring(DETAILS_CACHE_TTL_PREFIX.length()), Long.parseLong(props.getProperty(name)));
+			}
+			
+			SUGGEST_CACHE_ENABLED = props.containsKey("suggest.cache.enabled") ? Boolean.parseBoolean(props.getProperty("suggest.cache.enabled")) : true;
+			SUGGEST_CACHE_TTL = props.containsKey("suggest.cache.ttl") ? Long.parseLong(props.getProperty("suggest.cache.ttl")) : 60000;
+			SUGGEST_CACHE_MAX_PREFIXES = props.containsKey("suggest.cache.max.prefixes") ? Integer.parseInt(props.getProperty("suggest.cache.max.prefixes")) : 10000;
+			
+			ROUTING_VIRTUAL_NODES = props.containsKey("routing.virtual.nodes") ? Integer.parseInt(props.getProperty("routing.virtual.nodes")) : 100;
+			ROUTING_FAILURE_THRESHOLD = props.containsKey("routing.failure.threshold") ? Integer.parseInt(props.getProperty("routing.failure.threshold")) : 3;
+			ROUTING_DOWN_TIME = props.containsKey("routing.down.time") ? Long.parseLong(props.getProperty("routing.down.time")) : 10000;
 		} catch (IOException e) {
 			log.error(e.getMessage());
 			throw new RuntimeException(e);
 		}
 	}
+	
+	/**
+	 * Parses a comma separated list, keeping the order and the case of the values.
+	 */
+	private static List<String> parseList(String value) {
+		List<String> result = new ArrayList<>();
+		for (String item : value.split(",")) {
+			if (!item.trim().isEmpty())
+				result.add(item.trim());
+		}
+		return result;
+	}
+	
+	/**
+	 * Parses a comma separated list into a set of lower case values.
+	 */
+	private static Set<String> parseSet(String value) {
+		Set<String> result = new HashSet<>();
+		for (String item : value.split(",")) {
+			if (!item.trim().isEmpty())
+				result.add(item.trim().toLowerCase());
+		}
+		return result;
+	}
 }
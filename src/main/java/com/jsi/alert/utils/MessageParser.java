@@ -1,6 +1,8 @@
 package com.jsi.alert.utils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -9,6 +11,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
@@ -465,15 +468,20 @@ public class MessageParser {
 	 * @param responseMsg
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
 	public static String parseKEUIPeopleResponse(String responseMsg) {
+		return parseKEUIPeopleResponse(parseDocument(responseMsg).getDocumentElement());
+	}
+	
+	public static String parseKEUIPeopleResponse(InputStream responseStream) {
+		return parseKEUIPeopleResponse(parseDocument(responseStream).getDocumentElement());
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static String parseKEUIPeopleResponse(Element doc) {
 		int minSize = 9;
 		int maxSize = 22;
 		
 		try {
-			DocumentBuilder builder = documentBuilderFactory.newDocumentBuilder();
-			Document doc = builder.parse(new ByteArrayInputStream(responseMsg.getBytes("UTF-8")));
-			
 			JSONObject result = new JSONObject();
 			
 			// parse all the people
@@ -576,12 +584,17 @@ public class MessageParser {
 	 * @param responseMsg
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
 	public static String parseKEUITimelineResponse(String responseMsg) {
+		return parseKEUITimelineResponse(parseDocument(responseMsg).getDocumentElement());
+	}
+	
+	public static String parseKEUITimelineResponse(InputStream responseStream) {
+		return parseKEUITimelineResponse(parseDocument(responseStream).getDocumentElement());
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static String parseKEUITimelineResponse(Element doc) {
 		try {
-			DocumentBuilder builder = documentBuilderFactory.newDocumentBuilder();
-			Document doc = builder.parse(new ByteArrayInputStream(responseMsg.getBytes("UTF-8")));
-			
 			NodeList monthEls = doc.getElementsByTagName("month");
 			
 			Map<String, List<Integer>> monthH = new HashMap<>();
@@ -681,14 +694,19 @@ public class MessageParser {
 	 * @param responseMsg
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
 	public static String parseKEUIKeywordsResponse(String responseMsg) {
+		return parseKEUIKeywordsResponse(parseDocument(responseMsg).getDocumentElement());
+	}
+	
+	public static String parseKEUIKeywordsResponse(InputStream responseStream) {
+		return parseKEUIKeywordsResponse(parseDocument(responseStream).getDocumentElement());
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static String parseKEUIKeywordsResponse(Element doc) {
 		try {
 			JSONArray kwsJSon = new JSONArray();
 			
-			DocumentBuilder builder = documentBuilderFactory.newDocumentBuilder();
-			Document doc = builder.parse(new ByteArrayInputStream(responseMsg.getBytes("UTF-8")));
-			
 			Element resultsNode = (Element) doc.getElementsByTagName("results").item(0);
 			
 			NodeList kws = resultsNode.getElementsByTagName("kw");
@@ -721,12 +739,17 @@ public class MessageParser {
 	 * @param responseMsg
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
 	public static String parseKEUIItemsResponse(String responseMsg) {
+		return parseKEUIItemsResponse(parseDocument(responseMsg).getDocumentElement());
+	}
+	
+	public static String parseKEUIItemsResponse(InputStream responseStream) {
+		return parseKEUIItemsResponse(parseDocument(responseStream).getDocumentElement());
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static String parseKEUIItemsResponse(Element doc) {
 		try {
-			DocumentBuilder builder = documentBuilderFactory.newDocumentBuilder();
-			Document doc = builder.parse(new ByteArrayInputStream(responseMsg.getBytes("UTF-8")));
-			
 			JSONArray items = new JSONArray();
 			
 			// parse people
@@ -828,6 +851,68 @@ public class MessageParser {
 		}
 	}
 	
+	/**
+	 * Parses a KEUI reply to a batch of general queries. Each sub-query is answered in its
+	 * own <code>queryResult</code> element, which is parsed with the parser of its section.
+	 * 
+	 * @param responseMsg
+	 * @return the JSON result of each section
+	 */
+	public static Map<String, String> parseKEUIBatchResponse(String responseMsg) {
+		return parseKEUIBatchResponse(parseDocument(responseMsg));
+	}
+	
+	public static Map<String, String> parseKEUIBatchResponse(InputStream responseStream) {
+		return parseKEUIBatchResponse(parseDocument(responseStream));
+	}
+	
+	private static Map<String, String> parseKEUIBatchResponse(Document doc) {
+		Map<String, String> resultH = new LinkedHashMap<>();
+		
+		NodeList sectionEls = doc.getElementsByTagName("queryResult");
+		for (int i = 0; i < sectionEls.getLength(); i++) {
+			Element sectionEl = (Element) sectionEls.item(i);
+			String section = sectionEl.getAttribute("section");
+			
+			if ("peopleData".equals(section))
+				resultH.put(section, parseKEUIPeopleResponse(sectionEl));
+			else if ("keywordData".equals(section))
+				resultH.put(section, parseKEUIKeywordsResponse(sectionEl));
+			else if ("timelineData".equals(section))
+				resultH.put(section, parseKEUITimelineResponse(sectionEl));
+			else if ("itemData".equals(section))
+				resultH.put(section, parseKEUIItemsResponse(sectionEl));
+			else
+				log.warn("Unknown section in KEUI batch response: " + section + ", ignoring...");
+		}
+		
+		if (resultH.isEmpty())
+			throw new IllegalArgumentException("The KEUI response doesn't contain any query results, batching is probably not supported!");
+		
+		return resultH;
+	}
+	
+	private static Document parseDocument(String responseMsg) {
+		try {
+			return parseDocument(new ByteArrayInputStream(responseMsg.getBytes("UTF-8")));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalArgumentException("Failed to parse the response!", e);
+		}
+	}
+	
+	private static Document parseDocument(InputStream responseStream) {
+		try {
+			DocumentBuilder builder = documentBuilderFactory.newDocumentBuilder();
+			return builder.parse(responseStream);
+		} catch (Throwable t) {
+			throw new IllegalArgumentException("Failed to parse the response!", t);
+		} finally {
+			try {
+				responseStream.close();
+			} catch (IOException e) {}
+		}
+	}
+	
 	@SuppressWarnings("unchecked")
 	private static void parseKEUIMetadata(Element node, JSONObject result) {
 		if (node.getElementsByTagName("metaData").getLength() > 0) {
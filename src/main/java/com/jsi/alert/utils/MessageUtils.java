@@ -2,6 +2,7 @@ package com.jsi.alert.utils;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -9,6 +10,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -166,11 +168,7 @@ public class MessageUtils {
 			SOAPEnvelope envelope = msg.getSOAPPart().getEnvelope();
 			SOAPElement queryEl = (SOAPElement) msg.getSOAPBody().getElementsByTagName("query").item(0);
 			
-			SOAPElement params = queryEl.addChildElement("params");
-			params.addAttribute(envelope.createName("resultData"), "peopleData");
-			params.addAttribute(envelope.createName("maxCountItems"), "1000");
-			params.addAttribute(envelope.createName("includePeopleData"), "True");
-			params.addAttribute(envelope.createName("sortBy"), props.getProperty("sort"));
+			addKEUIPeopleParams(envelope, queryEl, props);
 			
 			ByteArrayOutputStream out = new ByteArrayOutputStream();
 			msg.writeTo(out);
@@ -179,6 +177,14 @@ public class MessageUtils {
 			throw new IllegalArgumentException("An error occurred while generating KEUI people message!", t);
 		}
 	}
+	
+	private static void addKEUIPeopleParams(SOAPEnvelope envelope, SOAPElement query, Properties props) throws SOAPException {
+		SOAPElement params = query.addChildElement("params");
+		params.addAttribute(envelope.createName("resultData"), "peopleData");
+		params.addAttribute(envelope.createName("maxCountItems"), "1000");
+		params.addAttribute(envelope.createName("includePeopleData"), "True");
+		params.addAttribute(envelope.createName("sortBy"), props.getProperty("sort"));
+	}
 
 	/**
 	 * Constructs a message for timeline data, which can be sent to the KEUI component.
@@ -194,9 +200,7 @@ public class MessageUtils {
 			SOAPEnvelope envelope = msg.getSOAPPart().getEnvelope();
 			SOAPElement queryEl = (SOAPElement) msg.getSOAPBody().getElementsByTagName("query").item(0);
 			
-			SOAPElement params = queryEl.addChildElement("params");
-			params.addAttribute(envelope.createName("resultData"), "timelineData");
-			params.addAttribute(envelope.createName("sortBy"), props.getProperty("sort"));
+			addKEUITimelineParams(envelope, queryEl, props);
 			
 			ByteArrayOutputStream out = new ByteArrayOutputStream();
 			msg.writeTo(out);
@@ -205,6 +209,12 @@ public class MessageUtils {
 			throw new IllegalArgumentException("An error occurred while generating KEUI timeline message!", t);
 		}
 	}
+	
+	private static void addKEUITimelineParams(SOAPEnvelope envelope, SOAPElement query, Properties props) throws SOAPException {
+		SOAPElement params = query.addChildElement("params");
+		params.addAttribute(envelope.createName("resultData"), "timelineData");
+		params.addAttribute(envelope.createName("sortBy"), props.getProperty("sort"));
+	}
 
 	/**
 	 * Constructs a message for item data, which can be sent to the KEUI component.
@@ -220,18 +230,8 @@ public class MessageUtils {
 			SOAPEnvelope envelope = msg.getSOAPPart().getEnvelope();
 			SOAPElement queryEl = (SOAPElement) msg.getSOAPBody().getElementsByTagName("query").item(0);
 			
-			SOAPElement params = queryEl.addChildElement("params");
-			params.addAttribute(envelope.createName("resultData"), "itemData");
-			params.addAttribute(envelope.createName("offset"), props.containsKey("offset") ? props.getProperty("offset") : "0");
-			params.addAttribute(envelope.createName("maxCount"), props.containsKey("maxCount") ? props.getProperty("maxCount") : "100");
-			params.addAttribute(envelope.createName("includeAttachments"), "True");
-			params.addAttribute(envelope.createName("sortBy"), "dateDesc");
-			params.addAttribute(envelope.createName("itemDataSnipLen"), KEUI_ITEM_SNIP_LEN);
-			params.addAttribute(envelope.createName("snipMatchKeywords"), "True");
-			params.addAttribute(envelope.createName("keywordMatchOffset"), "25");
-			params.addAttribute(envelope.createName("includePeopleData"), "True");
-			params.addAttribute(envelope.createName("sortBy"), props.getProperty("sort"));
-	
+			addKEUIItemsParams(envelope, queryEl, props);
+			
 			ByteArrayOutputStream out = new ByteArrayOutputStream();
 			msg.writeTo(out);
 			return new String(out.toByteArray());
@@ -239,6 +239,20 @@ public class MessageUtils {
 			throw new IllegalArgumentException("An error occurred while generating KEUI items message!", t);
 		}
 	}
+	
+	private static void addKEUIItemsParams(SOAPEnvelope envelope, SOAPElement query, Properties props) throws SOAPException {
+		SOAPElement params = query.addChildElement("params");
+		params.addAttribute(envelope.createName("resultData"), "itemData");
+		params.addAttribute(envelope.createName("offset"), props.containsKey("offset") ? props.getProperty("offset") : "0");
+		params.addAttribute(envelope.createName("maxCount"), props.containsKey("maxCount") ? props.getProperty("maxCount") : "100");
+		params.addAttribute(envelope.createName("includeAttachments"), "True");
+		params.addAttribute(envelope.createName("sortBy"), "dateDesc");
+		params.addAttribute(envelope.createName("itemDataSnipLen"), KEUI_ITEM_SNIP_LEN);
+		params.addAttribute(envelope.createName("snipMatchKeywords"), "True");
+		params.addAttribute(envelope.createName("keywordMatchOffset"), "25");
+		params.addAttribute(envelope.createName("includePeopleData"), "True");
+		params.addAttribute(envelope.createName("sortBy"), props.getProperty("sort"));
+	}
 
 	/**
 	 * Constructs a message for keyword data, which can be sent to the KEUI component.
@@ -254,14 +268,7 @@ public class MessageUtils {
 			SOAPEnvelope envelope = msg.getSOAPPart().getEnvelope();
 			SOAPElement queryEl = (SOAPElement) msg.getSOAPBody().getElementsByTagName("query").item(0);
 			
-			SOAPElement params = queryEl.addChildElement("params");
-			params.addAttribute(envelope.createName("resultData"), "keywordData");
-
-			params.addAttribute(envelope.createName("keywordCount"), "60");
-			params.addAttribute(envelope.createName("sampleSize"), "50000");
-			params.addAttribute(envelope.createName("keywordSource"), "concepts");
-			params.addAttribute(envelope.createName("keywordMethod"), "localConceptSpV");
-			params.addAttribute(envelope.createName("sortBy"), props.getProperty("sort"));
+			addKEUIKeywordParams(envelope, queryEl, props);
 			
 			ByteArrayOutputStream out = new ByteArrayOutputStream();
 			msg.writeTo(out);
@@ -271,6 +278,62 @@ public class MessageUtils {
 		}
 	}
 	
+	private static void addKEUIKeywordParams(SOAPEnvelope envelope, SOAPElement query, Properties props) throws SOAPException {
+		SOAPElement params = query.addChildElement("params");
+		params.addAttribute(envelope.createName("resultData"), "keywordData");
+
+		params.addAttribute(envelope.createName("keywordCount"), "60");
+		params.addAttribute(envelope.createName("sampleSize"), "50000");
+		params.addAttribute(envelope.createName("keywordSource"), "concepts");
+		params.addAttribute(envelope.createName("keywordMethod"), "localConceptSpV");
+		params.addAttribute(envelope.createName("sortBy"), props.getProperty("sort"));
+	}
+	
+	/**
+	 * Constructs a message which packs several general queries into one KEUI request with
+	 * a single event ID. Each query gets its own conditions and is tagged with its section,
+	 * which KEUI copies to the matching <code>queryResult</code> of the reply.
+	 * 
+	 * @param sectionPropsH the properties of each query by its section (peopleData, keywordData, timelineData or itemData)
+	 * @param requestId
+	 * @return
+	 */
+	public static String genKEUIBatchMessage(Map<String, Properties> sectionPropsH, String requestId) {
+		try {
+			SOAPMessage msg = getKEUITemplate("Query", requestId);
+			SOAPEnvelope envelope = msg.getSOAPPart().getEnvelope();
+			SOAPElement requestData = (SOAPElement) msg.getSOAPBody().getElementsByTagName("s1:requestData").item(0);
+			
+			for (Map.Entry<String, Properties> entry : sectionPropsH.entrySet()) {
+				String section = entry.getKey();
+				Properties props = entry.getValue();
+				
+				SOAPElement query = requestData.addChildElement("query");
+				query.addAttribute(envelope.createName("type"), "generalQuery");
+				query.addAttribute(envelope.createName("section"), section);
+				
+				addKEUIQueryArgs(envelope, query, props);
+				
+				if ("peopleData".equals(section))
+					addKEUIPeopleParams(envelope, query, props);
+				else if ("keywordData".equals(section))
+					addKEUIKeywordParams(envelope, query, props);
+				else if ("timelineData".equals(section))
+					addKEUITimelineParams(envelope, query, props);
+				else if ("itemData".equals(section))
+					addKEUIItemsParams(envelope, query, props);
+				else
+					throw new IllegalArgumentException("Unknown section: " + section + "!");
+			}
+			
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			msg.writeTo(out);
+			return new String(out.toByteArray());
+		} catch (Throwable t) {
+			throw new IllegalArgumentException("An error occurred while generating KEUI batch message!", t);
+		}
+	}
+	
 	/**
 	 * Constructs a message for requesting suggestions, which can be sent to the KEUI component.
 	 * 
@@ -455,104 +518,117 @@ public class MessageUtils {
 			SOAPElement requestData = (SOAPElement) msg.getSOAPBody().getElementsByTagName("s1:requestData").item(0);
 			SOAPElement query = (SOAPElement) requestData.getElementsByTagName("query").item(0);
 			
-			SOAPElement args = query.addChildElement("queryArgs");
-			SOAPElement conditions = args.addChildElement("conditions");
+			addKEUIQueryArgs(envelope, query, props);
 			
-			if (props.containsKey("keywords")) {
-				SOAPElement kwsEl = conditions.addChildElement("enrychableKeywords");
-				kwsEl.setTextContent(props.getProperty("keywords"));
-				
-				if (props.containsKey("optional")) {
-					boolean optional = Utils.parseBoolean(props.getProperty("optional"));
-					if (optional)
-						kwsEl.addAttribute(envelope.createName("optional"), "1");
-				}
+			return msg;
+		} catch (Throwable t) {
+			throw new IllegalStateException("En exception occurred while generating KEUI message!", t);
+		}
+	}
+	
+	/**
+	 * Adds the query conditions to the query element.
+	 * 
+	 * @param envelope
+	 * @param query
+	 * @param props
+	 * @throws SOAPException
+	 * @throws ParseException
+	 */
+	private static void addKEUIQueryArgs(SOAPEnvelope envelope, SOAPElement query, Properties props) throws SOAPException, ParseException {
+		SOAPElement args = query.addChildElement("queryArgs");
+		SOAPElement conditions = args.addChildElement("conditions");
+		
+		if (props.containsKey("keywords")) {
+			SOAPElement kwsEl = conditions.addChildElement("enrychableKeywords");
+			kwsEl.setTextContent(props.getProperty("keywords"));
+			
+			if (props.containsKey("optional")) {
+				boolean optional = Utils.parseBoolean(props.getProperty("optional"));
+				if (optional)
+					kwsEl.addAttribute(envelope.createName("optional"), "1");
 			}
+		}
+		
+		if (props.containsKey("people")) {
+			String[] people = props.getProperty("people").split(",");
 			
-			if (props.containsKey("people")) {
-				String[] people = props.getProperty("people").split(",");
+			for (String personOrV : people) {
+				String[] personV = personOrV.split("\\|");
+				SOAPElement accounts = conditions.addChildElement("accounts");
 				
-				for (String personOrV : people) {
-					String[] personV = personOrV.split("\\|");
-					SOAPElement accounts = conditions.addChildElement("accounts");
-					
-					for (String person : personV)
-						accounts.addChildElement("account").setAttribute("name", person);
-				}
+				for (String person : personV)
+					accounts.addChildElement("account").setAttribute("name", person);
 			}
+		}
+		
+		if (props.containsKey("issues")) {
+			String[] issues = props.getProperty("issues").split(",");
 			
-			if (props.containsKey("issues")) {
-				String[] issues = props.getProperty("issues").split(",");
-				
-				for (String issue : issues) 
-					conditions.addChildElement("bugId").setTextContent(issue);
-			}
+			for (String issue : issues) 
+				conditions.addChildElement("bugId").setTextContent(issue);
+		}
+		
+		// sources and products go into the same tag
+		if (props.containsKey("sources") || props.containsKey("products")) {
+			List<String> tagIdV = new ArrayList<String>();
+			if (props.containsKey("sources")) tagIdV.addAll(Arrays.asList(props.getProperty("sources").split(",")));
+			if (props.containsKey("products")) tagIdV.addAll(Arrays.asList(props.getProperty("products").split(",")));
 			
-			// sources and products go into the same tag
-			if (props.containsKey("sources") || props.containsKey("products")) {
-				List<String> tagIdV = new ArrayList<String>();
-				if (props.containsKey("sources")) tagIdV.addAll(Arrays.asList(props.getProperty("sources").split(",")));
-				if (props.containsKey("products")) tagIdV.addAll(Arrays.asList(props.getProperty("products").split(",")));
-				
-				StringBuilder builder = new StringBuilder();
-				for (int i = 0; i < tagIdV.size(); i++) {
-					builder.append(tagIdV.get(i));
-					if (i < tagIdV.size() - 1)
-						builder.append("|");	// the delimiter is |
-				}
-				conditions.addChildElement("tagIdStr").setTextContent(builder.toString());
+			StringBuilder builder = new StringBuilder();
+			for (int i = 0; i < tagIdV.size(); i++) {
+				builder.append(tagIdV.get(i));
+				if (i < tagIdV.size() - 1)
+					builder.append("|");	// the delimiter is |
 			}
-			
-			if (props.containsKey("from") || props.contains("to")) {
-				SimpleDateFormat format = Utils.getClientDateFormat();
-				
-				SOAPElement timeline = conditions.addChildElement("timeline");
-				if (props.containsKey("from")) {
-					Date from = format.parse(props.getProperty("from"));
-					long winTime = Utils.toWindowsTime(from.getTime());
-					timeline.addAttribute(envelope.createName("start"), winTime + "");
-				}
-				if (props.containsKey("to")) {
-					Date to = format.parse(props.getProperty("to"));
-					long winTime = Utils.toWindowsTime(to.getTime());
-					timeline.addAttribute(envelope.createName("end"), winTime + "");
-				}
+			conditions.addChildElement("tagIdStr").setTextContent(builder.toString());
+		}
+		
+		if (props.containsKey("from") || props.contains("to")) {
+			SimpleDateFormat format = Utils.getClientDateFormat();
+			
+			SOAPElement timeline = conditions.addChildElement("timeline");
+			if (props.containsKey("from")) {
+				Date from = format.parse(props.getProperty("from"));
+				long winTime = Utils.toWindowsTime(from.getTime());
+				timeline.addAttribute(envelope.createName("start"), winTime + "");
 			}
-			
-			// set which fields to query for
-			List<String> qFields = new ArrayList<String>(keuiIgnoreKeys.length);
-			for (String key : keuiIgnoreKeys) {
-				if (props.containsKey(key) && Utils.parseBoolean(props.getProperty(key)))
-					qFields.add(key.substring(0, key.length() - 3));
+			if (props.containsKey("to")) {
+				Date to = format.parse(props.getProperty("to"));
+				long winTime = Utils.toWindowsTime(to.getTime());
+				timeline.addAttribute(envelope.createName("end"), winTime + "");
+			}
+		}
+		
+		// set which fields to query for
+		List<String> qFields = new ArrayList<String>(keuiIgnoreKeys.length);
+		for (String key : keuiIgnoreKeys) {
+			if (props.containsKey(key) && Utils.parseBoolean(props.getProperty(key)))
+				qFields.add(key.substring(0, key.length() - 3));
+			
+			if ("issuesChk".equals(key) && Utils.parseBoolean(props.getProperty(key))) {
+				// get the resolutions and statuses
+				List<String> resolutions = getResolutions(props);
+				List<String> statuses = getStatuses(props);
 				
-				if ("issuesChk".equals(key) && Utils.parseBoolean(props.getProperty(key))) {
-					// get the resolutions and statuses
-					List<String> resolutions = getResolutions(props);
-					List<String> statuses = getStatuses(props);
-					
-					if (resolutions.size() != availableResolutions.size()) {
-						String resolutionsStr = Utils.toCommaSepStr(resolutions);
-						conditions.addChildElement("issueResolution").setTextContent(resolutionsStr);
-					}
-					if (statuses.size() != availableStatuses.size()) {
-						String statusesStr = Utils.toCommaSepStr(statuses);
-						conditions.addChildElement("issueStatus").setTextContent(statusesStr);
-					}	
+				if (resolutions.size() != availableResolutions.size()) {
+					String resolutionsStr = Utils.toCommaSepStr(resolutions);
+					conditions.addChildElement("issueResolution").setTextContent(resolutionsStr);
 				}
+				if (statuses.size() != availableStatuses.size()) {
+					String statusesStr = Utils.toCommaSepStr(statuses);
+					conditions.addChildElement("issueStatus").setTextContent(statusesStr);
+				}	
 			}
-			
-			StringBuilder builder = new StringBuilder();
-			for (int i = 0; i < qFields.size(); i++) {
-				builder.append(qFields.get(i));
-				if (i < qFields.size() - 1)
-					builder.append(",");
-			}
-			conditions.addChildElement("postTypes").setTextContent(builder.toString());
-			
-			return msg;
-		} catch (Throwable t) {
-			throw new IllegalStateException("En exception occurred while generating KEUI message!", t);
 		}
+		
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < qFields.size(); i++) {
+			builder.append(qFields.get(i));
+			if (i < qFields.size() - 1)
+				builder.append(",");
+		}
+		conditions.addChildElement("postTypes").setTextContent(builder.toString());
 	}
 	
 	/**
@@ -0,0 +1,81 @@
+package com.jsi.alert.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the executors of the work which blocks on I/O: completing the MQ requests, the
+ * Jersey calls to the web services and the servlet handlers which make them. If
+ * <code>request.virtual.threads</code> is set and the JVM supports virtual threads, each
+ * task runs on its own virtual thread, so blocking I/O doesn't limit the number of
+ * concurrent users, otherwise the tasks run on a fixed pool.
+ */
+public final class ThreadPools {
+
+	private static final Logger log = LoggerFactory.getLogger(ThreadPools.class);
+
+	private ThreadPools() {}
+
+	/**
+	 * Creates an executor for blocking tasks, virtual threads are used if <code>request.virtual.threads</code> is set.
+	 *
+	 * @param name the prefix of the thread names
+	 * @param nThreads the number of threads if virtual threads are not used
+	 * @return
+	 */
+	public static ExecutorService newBlockingExecutor(String name, int nThreads) {
+		return newBlockingExecutor(name, nThreads, Configuration.VIRTUAL_THREADS);
+	}
+
+	/**
+	 * Creates an executor for blocking tasks.
+	 *
+	 * @param name the prefix of the thread names
+	 * @param nThreads the number of threads if virtual threads are not used
+	 * @param virtual whether to use virtual threads, if the JVM supports them
+	 * @return
+	 */
+	public static ExecutorService newBlockingExecutor(String name, int nThreads, boolean virtual) {
+		if (virtual) {
+			// looked up reflectively, so the same build also runs on older JVMs
+			try {
+				Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+				Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+				builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+				ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+				Method executorMethod = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+				if (log.isDebugEnabled()) log.debug("Running " + name + " on virtual threads...");
+				return (ExecutorService) executorMethod.invoke(null, factory);
+			} catch (ReflectiveOperationException e) {
+				log.warn("Virtual threads are not supported by this JVM, running " + name + " on " + nThreads + " threads...");
+			}
+		}
+		return Executors.newFixedThreadPool(nThreads, newThreadFactory(name));
+	}
+
+	/**
+	 * Creates a factory of daemon threads named <code>name-1</code>, <code>name-2</code>, ...
+	 *
+	 * @param name
+	 * @return
+	 */
+	public static ThreadFactory newThreadFactory(final String name) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+}
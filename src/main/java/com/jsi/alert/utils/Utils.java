@@ -1,5 +1,7 @@
 package com.jsi.alert.utils;
 
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.text.SimpleDateFormat;
 import java.util.Iterator;
 import java.util.List;
@@ -29,6 +31,27 @@ public class Utils {
 		return System.nanoTime() + "" + rand.nextInt(10000);
 	}
 	
+	/**
+	 * Generates an ID of this UI node, which is used to route the replies back to it.
+	 */
+	public static String genNodeID() {
+		String host;
+		try {
+			host = InetAddress.getLocalHost().getHostName();
+		} catch (UnknownHostException e) {
+			host = "alert-ui";
+		}
+		return toNodeID(host + "-" + rand.nextInt(10000));
+	}
+	
+	/**
+	 * Turns the name into a valid node ID. The ID is used in message selectors, so quotes
+	 * and the <code>LIKE</code> wildcards are replaced.
+	 */
+	public static String toNodeID(String name) {
+		return name.trim().replaceAll("[^A-Za-z0-9.\\-]", "-");
+	}
+	
 	/**
 	 * Returns true if the parameter represents an integer.
 	 */
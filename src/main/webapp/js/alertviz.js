@@ -804,6 +804,7 @@ var AlertViz = function(options) {
     var socialGraph = null;
     var chart = null;
     var currentQueryOpts = null;
+    var unavailableUntil = 0;
     
     var normalBarColor = getCssValue('bar-normal', 'background-color');
 	var selectedBarColor = getCssValue('bar-selected', 'background-color');
@@ -944,7 +945,7 @@ var AlertViz = function(options) {
                 success: function (data, textStatus, jqXHR) {
                 	that.setQueryResults(data);
                 },
-                error: function (jqXHR, textStatus, errorThrown) { /* for now do nothing */ }
+                error: function (jqXHR, textStatus, errorThrown) { that.showRequestError(jqXHR); }
             });
     	},
     	
@@ -952,7 +953,11 @@ var AlertViz = function(options) {
     	 * Items is special because it contains offset and limit
     	 */
     	searchItemsGeneral: function (queryOpts, offset, limit) {
-    		return that.searchItemsByQueryOpts({
+    		return that.searchItemsByQueryOpts(that.getItemQueryOpts(queryOpts, offset, limit));
+    	},
+    	
+    	getItemQueryOpts: function (queryOpts, offset, limit) {
+    		return {
     			type: 'itemData',
             	keywords: queryOpts.keywords,
     			people: queryOpts.people,
@@ -981,7 +986,49 @@ var AlertViz = function(options) {
     			DuplicateChk: queryOpts.duplicateChk,
     			offset: offset,
     			maxCount: limit
-    		});
+    		};
+    	},
+    	
+    	/*
+    	 * Fetches the people, keywords, timeline and items of a general search in one request
+    	 */
+    	searchAllGeneral: function (queryOpts, offset, limit) {
+    		var itemOpts = that.getItemQueryOpts(queryOpts, offset, limit);
+    		
+    		$.ajax({
+                type: "POST",
+                url: "query",
+                data: $.extend({}, itemOpts, {type: 'search', issues: queryOpts.issues}),
+                dataType: "json",
+                async: true,
+                success: function (data, textStatus, jqXHR) {
+                	currentQueryOpts = itemOpts;
+                	
+                	var sections = ['keywordData', 'timelineData', 'itemData', 'peopleData'];
+                	for (var i = 0; i < sections.length; i++) {
+                		if (data[sections[i]] != null)
+                			that.setQueryResults(data[sections[i]]);
+                	}
+                },
+                error: function (jqXHR, textStatus, errorThrown) { that.showRequestError(jqXHR); }
+            });
+    	},
+    	
+    	/*
+    	 * Tells the user when a backend component is unavailable, the other errors are ignored
+    	 */
+    	showRequestError: function (jqXHR) {
+    		if (jqXHR.status != 503) return;
+    		
+    		// the queries are sent in parallel, so only show the first rejection
+    		var now = new Date().getTime();
+    		if (now < unavailableUntil) return;
+    		
+    		var retryAfter = parseInt(jqXHR.getResponseHeader('Retry-After'));
+    		if (isNaN(retryAfter)) retryAfter = 10;
+    		unavailableUntil = now + retryAfter*1000;
+    		
+    		alert('The search service is temporarily unavailable, please try again in ' + retryAfter + ' seconds.');
     	},
     	
     	searchItemsByQueryOpts: function (queryOpts) {
@@ -995,7 +1042,7 @@ var AlertViz = function(options) {
                 	currentQueryOpts = queryOpts;
                 	that.setQueryResults(data);
                 },
-                error: function (jqXHR, textStatus, errorThrown) { /* for now do nothing */ }
+                error: function (jqXHR, textStatus, errorThrown) { that.showRequestError(jqXHR); }
             });
     	},
     	
@@ -1051,10 +1098,7 @@ var AlertViz = function(options) {
     			duplicateChk: $('#gen_duplicate_check').attr('checked') == 'checked'
     		};
 			
-			that.searchKeywordsGeneral(queryOpts);
-			that.searchTimelineGeneral(queryOpts);
-			that.searchItemsGeneral(queryOpts, 0, itemsPerPage);
-			that.searchPeopleGeneral(queryOpts);
+			that.searchAllGeneral(queryOpts, 0, itemsPerPage);
 			
 			that.cleanData();
 			return false;
@@ -1095,7 +1139,7 @@ var AlertViz = function(options) {
 	                	currentQueryOpts = queryOpts;
 	    				that.setQueryResults(data);
 	    			},
-	                error: function (jqXHR, textStatus, errorThrown) { /* for now do nothing */ }
+	                error: function (jqXHR, textStatus, errorThrown) { that.showRequestError(jqXHR); }
 	            });
     		} catch (e) {
     			alert(e);
@@ -0,0 +1,115 @@
+package com.jsi.alert.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.jsi.alert.service.UniversalService.RequestType;
+import com.jsi.alert.utils.Configuration;
+import com.jsi.alert.utils.ThreadPools;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Compares the throughput of the blocking web service calls on the platform thread pool
+ * and on virtual threads. A local HTTP server answers each call after a fixed latency,
+ * the calls are made through <code>UniversalService.fetchUrl</code> on the executors
+ * created by <code>ThreadPools</code>, as the servlet handlers make them.
+ *
+ * Run on JDK 21:
+ * <pre>
+ * mvn -Pjdk21 test-compile exec:java -Dexec.mainClass=com.jsi.alert.service.VirtualThreadBenchmark \
+ *     -Dexec.classpathScope=test -Dexec.args="[requests] [latency ms] [platform threads]"
+ * </pre>
+ */
+public class VirtualThreadBenchmark {
+
+	private static final String RESPONSE = "ok";
+
+	public static void main(String[] args) throws Exception {
+		int requests = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		final long latency = args.length > 1 ? Long.parseLong(args[1]) : 100;
+		int platformThreads = args.length > 2 ? Integer.parseInt(args[2]) : Configuration.HANDLER_THREADS;
+
+		// the server must not be the bottleneck
+		HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 1000);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(latency);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				byte[] body = RESPONSE.getBytes("UTF-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		ExecutorService serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+
+		String url = "http://localhost:" + server.getAddress().getPort() + "/";
+		System.out.println(requests + " requests, " + latency + "ms latency, " + platformThreads + " platform threads");
+
+		try {
+			// warm up the client and the JIT
+			run(url, Math.min(requests, 500), platformThreads, false);
+
+			report("platform", requests, run(url, requests, platformThreads, false));
+			report("virtual", requests, run(url, requests, platformThreads, true));
+		} finally {
+			server.stop(0);
+			serverExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Makes the calls and waits for all of them.
+	 *
+	 * @return the elapsed time in milliseconds
+	 */
+	private static long run(final String url, int requests, int platformThreads, boolean virtual) throws InterruptedException {
+		ExecutorService executor = ThreadPools.newBlockingExecutor("benchmark", platformThreads, virtual);
+		final CountDownLatch latch = new CountDownLatch(requests);
+		final AtomicInteger failures = new AtomicInteger();
+
+		long startTime = System.nanoTime();
+		for (int i = 0; i < requests; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (!RESPONSE.equals(UniversalService.fetchUrl(url, Collections.<String, String>emptyMap(), "text/plain", RequestType.GET)))
+							failures.incrementAndGet();
+					} catch (Throwable t) {
+						failures.incrementAndGet();
+					} finally {
+						latch.countDown();
+					}
+				}
+			});
+		}
+		latch.await();
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+		executor.shutdown();
+		if (failures.get() > 0)
+			System.out.println(failures.get() + " calls failed!");
+		return elapsed;
+	}
+
+	private static void report(String mode, int requests, long elapsed) {
+		System.out.println(String.format("%-8s %6d ms  %8.1f requests/s", mode, elapsed, requests * 1000.0 / Math.max(elapsed, 1)));
+	}
+}